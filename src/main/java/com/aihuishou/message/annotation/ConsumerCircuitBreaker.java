@@ -0,0 +1,49 @@
+package com.aihuishou.message.annotation;
+
+
+import java.lang.annotation.*;
+
+/**
+ * consumer circuit breaker configuration
+ * <note>
+ *     when failure rate of the last windowSize messages reaches failureRateThreshold, consume threads sleep for
+ *     openMillis without dispatching, then halfOpenProbes messages are let through to decide whether to close again.
+ * </note>
+ * @author js.xie
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ConsumerCircuitBreaker {
+
+    /**
+     * number of last messages failure rate is computed over.
+     * Default: 100.
+     */
+    int windowSize() default 100;
+
+    /**
+     * min messages recorded before circuit may open.
+     * Default: 20.
+     */
+    int minimumCalls() default 20;
+
+    /**
+     * failure rate in percent that opens circuit.
+     * Default: 50.
+     */
+    int failureRateThreshold() default 50;
+
+    /**
+     * how long an open circuit stays open.
+     * Default: 30000 ms.
+     */
+    long openMillis() default 30000;
+
+    /**
+     * messages let through when half open.
+     * Default: 3.
+     */
+    int halfOpenProbes() default 3;
+
+}
@@ -0,0 +1,44 @@
+package com.aihuishou.message.annotation;
+
+
+import java.lang.annotation.*;
+
+/**
+ * adaptive consumer concurrency configuration
+ * <note>
+ *     the consumer runs maxConcurrency threads, at most `limit` of them run handlers at the same time. limit grows
+ *     by one each interval while handler latency stays near its best, and shrinks by a quarter when latency inflates
+ *     or handlers fail.
+ * </note>
+ * @author js.xie
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ConsumerConcurrency {
+
+    /**
+     * lower bound of concurrency.
+     * Default: 1.
+     */
+    int minConcurrency() default 1;
+
+    /**
+     * upper bound of concurrency, also the consume thread number.
+     * Default: 16.
+     */
+    int maxConcurrency() default 16;
+
+    /**
+     * how often concurrency is adjusted.
+     * Default: 1000 ms.
+     */
+    int adjustIntervalMillis() default 1000;
+
+    /**
+     * how much average latency may exceed the best observed latency before concurrency shrinks.
+     * Default: 1.5.
+     */
+    double latencyTolerance() default 1.5;
+
+}
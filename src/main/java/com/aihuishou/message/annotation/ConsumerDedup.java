@@ -0,0 +1,44 @@
+package com.aihuishou.message.annotation;
+
+
+import com.aihuishou.message.constants.DedupKey;
+
+import java.lang.annotation.*;
+
+/**
+ * consumer duplicate delivery filter configuration
+ * <note>
+ *     consumed message ids are remembered in a bounded memory table, duplicates are committed without being converted
+ * </note>
+ * @author js.xie
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ConsumerDedup {
+
+    /**
+     * message attribute identifies duplicate deliveries.
+     * Default: MESSAGE_ID.
+     */
+    DedupKey key() default DedupKey.MESSAGE_ID;
+
+    /**
+     * max remembered messages, the oldest are evicted first when full.
+     * Default: 65536.
+     */
+    int capacity() default 65536;
+
+    /**
+     * how long one consumed message is remembered.
+     * Default: 600 s.
+     */
+    int ttlSeconds() default 600;
+
+    /**
+     * directory of memory mapped journal which lets remembered messages survive restart,
+     * empty means memory only. Placeholders are supported.
+     */
+    String journalDir() default "";
+
+}
@@ -1,6 +1,7 @@
 package com.aihuishou.message.annotation;
 
 
+import com.aihuishou.message.constants.RetryMode;
 import org.springframework.stereotype.Component;
 
 import java.lang.annotation.*;
@@ -51,5 +52,15 @@ public @interface ConsumerRetry {
      */
      double backOffMultiplier() default  2.0;
 
+    /**
+     * Whether back off sleeps on the consume thread or attempts are scheduled.
+     * Default: BLOCKING.
+     * SCHEDULED returns a failed message to the broker right away and counts its redeliveries as attempts,
+     * the message is committed when its last attempt fails. redelivery follows the broker's retry schedule, so back
+     * off above must be left unset and a custom RetryTemplate is not used in this mode. ORDERLY and KEY_ORDERED
+     * consumers do not support it.
+     */
+     RetryMode mode() default RetryMode.BLOCKING;
+
 
 }
@@ -57,9 +57,46 @@ public @interface MessageListener {
 
     /**
      * consumer thread number
+     * <note>
+     *     when consumeMode is KEY_ORDERED, it is also the number of lanes keys run on in parallel
+     * </note>
      */
     int consumeThreadNum() default 1;
 
+    /**
+     * user property whose value is the ordering key, empty means message key
+     * <note>
+     *     when consumeMode is KEY_ORDERED ,effective
+     * </note>
+     */
+    String orderKeyProperty() default "";
+
+    /**
+     * spel expression decides whether to consume one message, evaluated before the body is decoded,
+     * rejected messages are acknowledged without reaching handlers. empty means consume all
+     * <note>
+     *     root object exposes `tag`, `key`, `topic`, `reconsumeTimes`, `properties` and `header('name')`,
+     *     eg `header('tenant') == 'cn' and header('version') != null`
+     * </note>
+     */
+    String filterExpression() default "";
+
+    /**
+     * max messages of one batch
+     * <note>
+     *     when consumeMode is BATCH or KEY_ORDERED ,effective
+     * </note>
+     */
+    int consumeBatchMaxSize() default 32;
+
+    /**
+     * max seconds to wait for a batch to fill up, 0 means deliver what has been pulled right away
+     * <note>
+     *     when consumeMode is BATCH ,effective
+     * </note>
+     */
+    int batchMaxAwaitSeconds() default 0;
+
     /**
      * when consume faild times more than consumeFailedNum, will invoke error handler
      */
@@ -78,5 +115,47 @@ public @interface MessageListener {
      */
     ConsumerRetry retry() default @ConsumerRetry;
 
+    /**
+     * whether skip duplicate deliveries of consumed messages
+     */
+    boolean enableDedup() default false;
+
+    /**
+     * duplicate delivery filter configuration
+     * <note>
+     *     when enableDedup is true ,effective
+     * </note>
+     */
+    ConsumerDedup dedup() default @ConsumerDedup;
+
+    /**
+     * whether adjust consumer concurrency at runtime by handler latency, consumeThreadNum is ignored when enabled
+     * <note>
+     *     when consumeMode is CONCURRENTLY or BATCH ,effective
+     * </note>
+     */
+    boolean enableAdaptiveConcurrency() default false;
+
+    /**
+     * adaptive concurrency configuration
+     * <note>
+     *     when enableAdaptiveConcurrency is true ,effective
+     * </note>
+     */
+    ConsumerConcurrency concurrency() default @ConsumerConcurrency;
+
+    /**
+     * whether stop dispatching for a while when most messages fail
+     */
+    boolean enableCircuitBreaker() default false;
+
+    /**
+     * circuit breaker configuration
+     * <note>
+     *     when enableCircuitBreaker is true ,effective
+     * </note>
+     */
+    ConsumerCircuitBreaker circuitBreaker() default @ConsumerCircuitBreaker;
+
 
 }
@@ -4,6 +4,15 @@ import java.lang.annotation.*;
 
 /**
  * mark one method to consumer handler method
+ * <note>
+ *     one bean may have several handler methods, each message is routed to the first method whose tag and
+ *     user property match the message
+ * </note>
+ * <note>
+ *     besides the payload, a method may accept org.springframework.messaging.Message of payload, MessageHeaders,
+ *     `@Header` and `@Headers` arguments. headers sent by MqTemplate lose prefix "USERS_", see OnsHeaders for others.
+ *     batch methods accept List of payload or List of Message of payload
+ * </note>
  * @author js.xie
  */
 
@@ -12,5 +21,25 @@ import java.lang.annotation.*;
 @Documented
 public @interface MessageListenerHandlerMethod {
 
+    /**
+     * message tag handled by this method, `*` means any tag
+     * <note>
+     *     methods with explicit tag take precedence over `*`
+     * </note>
+     */
+    String tag() default "*";
+
+    /**
+     * name of user property message must carry to be handled by this method, empty means no restriction
+     * <note>
+     *     headers sent by MqTemplate are stored with prefix "USERS_"
+     * </note>
+     */
+    String property() default "";
+
+    /**
+     * expected value of {@link #property()}, empty means any value
+     */
+    String propertyValue() default "";
 
 }
@@ -2,8 +2,11 @@ package com.aihuishou.message.configuration;
 
 import com.aihuishou.message.annotation.MessageListener;
 import com.aihuishou.message.annotation.MessageListenerHandlerMethod;
+import com.aihuishou.message.consumer.MqBatchListener;
 import com.aihuishou.message.consumer.MqListener;
+import com.aihuishou.message.consumer.container.MqListenerContainerLifecycle;
 import com.aihuishou.message.consumer.container.MqListenerContainerRegistrar;
+import com.aihuishou.message.properties.ConsumerContainerProperties;
 import com.aihuishou.message.properties.ServerProperties;
 import com.aliyun.openservices.ons.api.ONSFactory;
 import org.springframework.aop.support.AopUtils;
@@ -14,6 +17,7 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.EnvironmentAware;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.core.annotation.Order;
@@ -35,10 +39,11 @@ import java.util.Objects;
  * @see MessageListener
  * @see MessageListenerHandlerMethod
  * @see MqListener
+ * @see MqBatchListener
  */
 @Configuration
 @ConditionalOnClass(ONSFactory.class)
-@EnableConfigurationProperties(ServerProperties.class)
+@EnableConfigurationProperties({ServerProperties.class, ConsumerContainerProperties.class})
 @Order
 public class ConsumerContainerConfiguration implements ApplicationContextAware, EnvironmentAware {
 
@@ -58,6 +63,14 @@ public class ConsumerContainerConfiguration implements ApplicationContextAware,
 
     }
 
+    /**
+     * containers are registered in {@link #init()} and started by lifecycle once the context is refreshed
+     */
+    @Bean
+    public MqListenerContainerLifecycle mqListenerContainerLifecycle(ConsumerContainerProperties consumerContainerProperties) {
+        return new MqListenerContainerLifecycle(consumerContainerProperties.getLifecycle());
+    }
+
     private void registerConsumerContainer(String beanName, Object bean) {
 
         // get actual bean class that not proxy bean
@@ -78,10 +91,10 @@ public class ConsumerContainerConfiguration implements ApplicationContextAware,
 
         }
 
-        // if not have method that annotated ListenerHandlerMethod,detect whether implement MQListener interface
+        // if not have method that annotated ListenerHandlerMethod,detect whether implement MQListener or MqBatchListener interface
         if (CollectionUtils.isEmpty(listenerHandlerMethods)) {
 
-            if (MqListener.class.isAssignableFrom(originTargetClass)) {
+            if (MqListener.class.isAssignableFrom(originTargetClass) || MqBatchListener.class.isAssignableFrom(originTargetClass)) {
 
                 MqListenerContainerRegistrar.registryFromInterface(beanName, bean, originTargetClass, environment, applicationContext);
 
@@ -92,13 +105,11 @@ public class ConsumerContainerConfiguration implements ApplicationContextAware,
 
         }
 
-        // method that annotated ListenerHandlerMethod must not more than one
-        if (listenerHandlerMethods.size() > 1) {
-            throw new IllegalStateException("originTargetClass:" + originTargetClass + "must not have more than one listenerHandlerMethod,excepted one but find" + listenerHandlerMethods.size());
+        if (CollectionUtils.isEmpty(listenerHandlerMethods)) {
+            throw new IllegalStateException("originTargetClass:" + originTargetClass + " must have listenerHandlerMethod or implement MqListener or MqBatchListener");
         }
 
-
-        // handler method that annotated ListenerHandlerMethod
+        // handler methods that annotated ListenerHandlerMethod, routed by tag in one container
         MqListenerContainerRegistrar.registryFromAnnotation(beanName, bean, originTargetClass, environment, applicationContext, listenerHandlerMethods);
 
     }
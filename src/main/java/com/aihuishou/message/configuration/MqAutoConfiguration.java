@@ -1,21 +1,48 @@
 package com.aihuishou.message.configuration;
 
+import com.aihuishou.message.consumer.container.MqListenerContainerMetricsFactory;
 import com.aihuishou.message.converter.ApplicationJsonMessageMarshallingConverter;
+import com.aihuishou.message.converter.CborMessageCodec;
+import com.aihuishou.message.converter.CompressionMetrics;
+import com.aihuishou.message.converter.MessageCodec;
+import com.aihuishou.message.converter.MessageCompressor;
 import com.aihuishou.message.converter.MessageConverter;
+import com.aihuishou.message.converter.SmileMessageCodec;
+import com.aihuishou.message.error.ErrorMessageHandlerStrategy;
+import com.aihuishou.message.error.ErrorMessagePipeline;
+import com.aihuishou.message.error.deadletter.DeadLetterJournal;
+import com.aihuishou.message.error.deadletter.DeadLetterJournalErrorMessageHandlerStrategy;
+import com.aihuishou.message.error.deadletter.DeadLetterReplayer;
+import com.aihuishou.message.metrics.MicrometerCompressionMetrics;
+import com.aihuishou.message.metrics.MicrometerMqListenerContainerMetricsFactory;
+import com.aihuishou.message.producer.HashShardingKeyStrategy;
+import com.aihuishou.message.producer.InFlightLimiter;
 import com.aihuishou.message.producer.MqTemplate;
+import com.aihuishou.message.producer.OrderedSendLanes;
+import com.aihuishou.message.producer.ProducerPool;
+import com.aihuishou.message.producer.RocketMQBatchSender;
+import com.aihuishou.message.producer.ShardingKeyStrategy;
+import com.aihuishou.message.properties.ConsumerContainerProperties;
 import com.aihuishou.message.properties.ProducerProperties;
 import com.aihuishou.message.properties.ServerProperties;
 import com.aliyun.openservices.ons.api.ONSFactory;
 import com.aliyun.openservices.ons.api.Producer;
 import com.aliyun.openservices.ons.api.PropertyKeyConst;
+import com.aliyun.openservices.ons.api.order.OrderProducer;
 import com.aliyun.openservices.shade.com.alibaba.rocketmq.client.impl.MQClientAPIImpl;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -23,15 +50,19 @@ import org.springframework.context.annotation.Import;
 import org.springframework.lang.Nullable;
 import org.springframework.util.StringUtils;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 /**
  * @author js.xie
  */
 
+@Slf4j
 @Configuration
-@EnableConfigurationProperties(value = {ServerProperties.class, ProducerProperties.class})
+@EnableConfigurationProperties(value = {ServerProperties.class, ProducerProperties.class, ConsumerContainerProperties.class})
 @ConditionalOnClass(MQClientAPIImpl.class)
 @Import(value = {ConsumerContainerConfiguration.class})
 public class MqAutoConfiguration {
@@ -44,25 +75,140 @@ public class MqAutoConfiguration {
 
     @Bean
     @ConditionalOnMissingBean(MessageConverter.class)
-    public MessageConverter messageConverter() {
+    public MessageConverter messageConverter(ObjectProvider<List<MessageCodec>> codecs,
+                                             ObjectProvider<List<MessageCompressor>> compressors,
+                                             ObjectProvider<CompressionMetrics> compressionMetrics,
+                                             ProducerProperties producerProperties) {
 
         ApplicationJsonMessageMarshallingConverter converter = new ApplicationJsonMessageMarshallingConverter();
 
         if (objectMapper == null) {
-            objectMapper = new ObjectMapper();
-            objectMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
-            objectMapper.setDateFormat(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"));
-
+            objectMapper = defaultObjectMapper();
         }
         converter.setObjectMapper(objectMapper);
 
+        List<MessageCodec> additionalCodecs = codecs.getIfAvailable();
+        if (null != additionalCodecs) {
+            converter.setCodecs(additionalCodecs);
+        }
+
+        List<MessageCompressor> additionalCompressors = compressors.getIfAvailable();
+        if (null != additionalCompressors) {
+            converter.setCompressors(additionalCompressors);
+        }
+
+        ProducerProperties.Compression compression = producerProperties.getCompression();
+        if (compression.isEnabled()) {
+            converter.setCompression(compression.getAlgorithm(), compression.getThresholdBytes());
+        }
+        converter.setMaxDecompressedBytes(compression.getMaxDecompressedBytes());
+
+        converter.setCompressionMetrics(compressionMetrics.getIfAvailable(() -> CompressionMetrics.NOOP));
+
         return converter;
     }
 
+    /**
+     * mapper of the converter when the application has no ObjectMapper bean
+     */
+    static ObjectMapper defaultObjectMapper() {
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        objectMapper.setDateFormat(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"));
+
+        return objectMapper;
+    }
+
+    /**
+     * binary codecs are registered when their jackson data format is on classpath,
+     * their mappers follow the settings of the application's ObjectMapper
+     */
+    @Configuration
+    @ConditionalOnClass(SmileFactory.class)
+    static class SmileCodecConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(SmileMessageCodec.class)
+        public SmileMessageCodec smileMessageCodec(ObjectProvider<ObjectMapper> objectMapper) {
+            return SmileMessageCodec.derivedFrom(objectMapper.getIfUnique(MqAutoConfiguration::defaultObjectMapper));
+        }
+    }
+
+    @Configuration
+    @ConditionalOnClass(CBORFactory.class)
+    static class CborCodecConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(CborMessageCodec.class)
+        public CborMessageCodec cborMessageCodec(ObjectProvider<ObjectMapper> objectMapper) {
+            return CborMessageCodec.derivedFrom(objectMapper.getIfUnique(MqAutoConfiguration::defaultObjectMapper));
+        }
+    }
+
+    @Bean(destroyMethod = "destroy")
+    @ConditionalOnMissingBean(ErrorMessagePipeline.class)
+    public ErrorMessagePipeline errorMessagePipeline(ConsumerContainerProperties consumerContainerProperties, ObjectProvider<List<ErrorMessageHandlerStrategy>> strategies) {
+        return new ErrorMessagePipeline(consumerContainerProperties.getErrorHandler(), strategies.getIfAvailable());
+    }
+
+    @Bean(destroyMethod = "destroy")
+    @ConditionalOnProperty(prefix = "spring.message.ons.consumer.dead-letter", name = "enabled", havingValue = "true")
+    @ConditionalOnMissingBean(DeadLetterJournal.class)
+    public DeadLetterJournal deadLetterJournal(ConsumerContainerProperties consumerContainerProperties) throws IOException {
+        ConsumerContainerProperties.DeadLetter deadLetter = consumerContainerProperties.getDeadLetter();
+        return new DeadLetterJournal(deadLetter.getDir(), deadLetter.getSegmentSize(), deadLetter.getFlushIntervalMillis(), deadLetter.getMsgIdCapacity());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "spring.message.ons.consumer.dead-letter", name = "enabled", havingValue = "true")
+    public DeadLetterJournalErrorMessageHandlerStrategy deadLetterJournalErrorMessageHandlerStrategy(DeadLetterJournal deadLetterJournal) {
+        return new DeadLetterJournalErrorMessageHandlerStrategy(deadLetterJournal);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "spring.message.ons.consumer.dead-letter", name = "enabled", havingValue = "true")
+    @ConditionalOnMissingBean(DeadLetterReplayer.class)
+    public DeadLetterReplayer deadLetterReplayer(DeadLetterJournal deadLetterJournal) {
+        return new DeadLetterReplayer(deadLetterJournal);
+    }
+
+    /**
+     * micrometer is optional, meters are registered when a MeterRegistry bean exists at container start
+     */
+    @Configuration
+    @ConditionalOnClass(MeterRegistry.class)
+    static class MetricsConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(MqListenerContainerMetricsFactory.class)
+        public MqListenerContainerMetricsFactory mqListenerContainerMetricsFactory(ObjectProvider<MeterRegistry> meterRegistry) {
+            return new MicrometerMqListenerContainerMetricsFactory(meterRegistry);
+        }
+
+        @Bean
+        @ConditionalOnMissingBean(CompressionMetrics.class)
+        public CompressionMetrics compressionMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+            return new MicrometerCompressionMetrics(meterRegistry);
+        }
+    }
+
     @Bean
     @ConditionalOnClass(Producer.class)
     @ConditionalOnMissingBean(Producer.class)
     public Producer mqProducer(ServerProperties serverProperties, ProducerProperties producerProperties) {
+        return ONSFactory.createProducer(onsProducerProperties(serverProperties, producerProperties));
+    }
+
+    @Bean
+    @ConditionalOnClass(OrderProducer.class)
+    @ConditionalOnMissingBean(OrderProducer.class)
+    @ConditionalOnProperty(prefix = "spring.message.ons.producer.order", name = "enabled", havingValue = "true")
+    public OrderProducer mqOrderProducer(ServerProperties serverProperties, ProducerProperties producerProperties) {
+        return ONSFactory.createOrderProducer(onsProducerProperties(serverProperties, producerProperties));
+    }
+
+    private static Properties onsProducerProperties(ServerProperties serverProperties, ProducerProperties producerProperties) {
 
         Properties properties = new Properties();
         properties.put(PropertyKeyConst.AccessKey, serverProperties.getAccessKey());
@@ -72,17 +218,67 @@ public class MqAutoConfiguration {
         }
         properties.put(PropertyKeyConst.ProducerId, producerProperties.getProducerGroup());
 
-        return ONSFactory.createProducer(properties);
+        return properties;
+    }
+
+    /**
+     * mqProducer and poolSize - 1 more producers, distinct instance names keep their client instances apart
+     */
+    private static ProducerPool producerPool(Producer producer, ServerProperties serverProperties, ProducerProperties producerProperties) {
+
+        List<Producer> producers = new ArrayList<>();
+        producers.add(producer);
+
+        for (int i = 1; i < producerProperties.getPoolSize(); i++) {
+
+            Properties properties = onsProducerProperties(serverProperties, producerProperties);
+            properties.put(PropertyKeyConst.InstanceName, producerProperties.getProducerGroup() + "-pool-" + i);
+
+            producers.add(ONSFactory.createProducer(properties));
+        }
+
+        return new ProducerPool(producers, producerProperties.getPool());
     }
 
     @Bean(destroyMethod = "destroy")
     @ConditionalOnBean(Producer.class)
     @ConditionalOnMissingBean(MqTemplate.class)
-    public MqTemplate mqTemplate(Producer producer, MessageConverter converter, ProducerProperties producerProperties) {
+    public MqTemplate mqTemplate(Producer producer, MessageConverter converter, ServerProperties serverProperties,
+                                 ProducerProperties producerProperties, ObjectProvider<OrderProducer> orderProducer,
+                                 ObjectProvider<ShardingKeyStrategy> shardingKeyStrategy) {
+
+        // spread sends across several producers
+        if (producerProperties.getPoolSize() > 1) {
+            producer = producerPool(producer, serverProperties, producerProperties);
+        }
 
         MqTemplate mqTemplate = new MqTemplate();
         mqTemplate.setProducer(producer);
         mqTemplate.setMessageConverter(converter);
+        mqTemplate.setDefaultContentType(producerProperties.getContentType());
+        mqTemplate.setInFlightLimiter(new InFlightLimiter(producerProperties.getAsync()));
+
+        OrderProducer mqOrderProducer = orderProducer.getIfAvailable();
+        if (null != mqOrderProducer) {
+
+            ProducerProperties.Order order = producerProperties.getOrder();
+
+            mqTemplate.setOrderProducer(mqOrderProducer);
+            mqTemplate.setShardingKeyStrategy(shardingKeyStrategy.getIfAvailable(
+                    () -> order.getShards() > 0 ? new HashShardingKeyStrategy(order.getShards()) : ShardingKeyStrategy.IDENTITY));
+            mqTemplate.setOrderedSendLanes(new OrderedSendLanes(order.getAsyncLanes(), order.getCloseTimeoutMillis()));
+        }
+
+        if (producerProperties.getBatch().isEnabled()) {
+
+            RocketMQBatchSender batchSender = RocketMQBatchSender.of(producer);
+
+            if (null != batchSender) {
+                mqTemplate.buildBatchAccumulator(batchSender, producerProperties.getBatch());
+            } else {
+                log.warn("producer {} has no rocketmq client, batchSend sends each message right away", producer);
+            }
+        }
 
         // enable additional retry
         if (producerProperties.getEnableRetry()) {
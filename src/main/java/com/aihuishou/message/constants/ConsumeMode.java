@@ -13,5 +13,22 @@ public enum ConsumeMode {
     /**
      * receive asynchronously delivered messages orderly. one queue, one thread
      */
-    ORDERLY
+    ORDERLY,
+
+    /**
+     * receive asynchronously delivered messages orderly per key. batches of up to consumeBatchMaxSize messages of one
+     * queue are fanned out by key across consumeThreadNum lanes, one key, one lane, so keys of a queue run in parallel
+     * <note>
+     *     messages with same key must be sent to same queue, eg by same sharding key. a batch is acknowledged only
+     *     after every message of it ran. a failed message holds messages of its key behind it back and the whole batch
+     *     is delivered again, messages of it that succeeded included. after consumeFailedNum deliveries a failed message
+     *     is handed to error message handlers and given up
+     * </note>
+     */
+    KEY_ORDERED,
+
+    /**
+     * receive asynchronously delivered messages concurrently, in batches of up to consumeBatchMaxSize messages
+     */
+    BATCH
 }
@@ -0,0 +1,19 @@
+package com.aihuishou.message.constants;
+
+/**
+ * which message attribute identifies duplicate deliveries
+ *
+ * @author js.xie
+ */
+public enum DedupKey {
+
+    /**
+     * ons message id, same for redelivery of one sent message
+     */
+    MESSAGE_ID,
+
+    /**
+     * message key set by producer, lets business idempotency key survive producer side resend
+     */
+    KEY
+}
@@ -0,0 +1,27 @@
+package com.aihuishou.message.constants;
+
+/**
+ * what to do with a failed message when error message queue is full
+ * <note>
+ * the queue feeds strategies which keep no messages, strategies keeping messages are not affected
+ * </note>
+ *
+ * @author js.xie
+ */
+public enum ErrorOverflowPolicy {
+
+    /**
+     * drop the new failed message
+     */
+    DISCARD,
+
+    /**
+     * drop the oldest queued failed message to make room for the new one
+     */
+    DISCARD_OLDEST,
+
+    /**
+     * handle the new failed message on the consume thread
+     */
+    CALLER_RUNS
+}
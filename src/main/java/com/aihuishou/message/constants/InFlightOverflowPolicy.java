@@ -0,0 +1,24 @@
+package com.aihuishou.message.constants;
+
+/**
+ * what an asynchronous send does when max in flight sends are reached
+ *
+ * @author js.xie
+ */
+public enum InFlightOverflowPolicy {
+
+    /**
+     * wait on the calling thread until one in flight send completes
+     */
+    BLOCK,
+
+    /**
+     * fail the send right away
+     */
+    FAIL_FAST,
+
+    /**
+     * wait up to acquireTimeoutMillis, then fail the send
+     */
+    TIMEOUT
+}
@@ -6,7 +6,7 @@ package com.aihuishou.message.constants;
 public final class MqListenerContainerConstants {
     public static final String PROP_CONSUMER="consumerProperties";
     public static final String PROP_MQ_LISTENER = "mqListener";
-    public static final String PROP_CONSUME_HANDLER_METHOD = "handlerMethod";
+    public static final String PROP_MQ_BATCH_LISTENER = "batchListener";
+    public static final String PROP_CONSUME_HANDLER_METHODS = "handlerMethods";
     public static final String PROP_CONSUME_INSTANCE = "instance";
-    public static final String PROP_CONSUMER_METHOD_PARAMETER_TYPE="messageType";
 }
@@ -0,0 +1,30 @@
+package com.aihuishou.message.constants;
+
+/**
+ * headers of messages handed to handlers accepting {@link org.springframework.messaging.Message} or `@Header` arguments,
+ * besides headers sent by MqTemplate
+ *
+ * @author js.xie
+ */
+public final class OnsHeaders {
+
+    public static final String PREFIX = "ons_";
+
+    public static final String TOPIC = PREFIX + "topic";
+
+    public static final String TAG = PREFIX + "tag";
+
+    public static final String KEYS = PREFIX + "keys";
+
+    public static final String MESSAGE_ID = PREFIX + "messageId";
+
+    public static final String RECONSUME_TIMES = PREFIX + "reconsumeTimes";
+
+    public static final String BORN_TIMESTAMP = PREFIX + "bornTimestamp";
+
+    public static final String SHARDING_KEY = PREFIX + "shardingKey";
+
+    private OnsHeaders() {
+
+    }
+}
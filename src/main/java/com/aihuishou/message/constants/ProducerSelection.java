@@ -0,0 +1,19 @@
+package com.aihuishou.message.constants;
+
+/**
+ * how a producer pool picks the member of one send
+ *
+ * @author js.xie
+ */
+public enum ProducerSelection {
+
+    /**
+     * members in turn
+     */
+    ROUND_ROBIN,
+
+    /**
+     * member with fewest sends awaiting broker acknowledgement
+     */
+    LEAST_IN_FLIGHT
+}
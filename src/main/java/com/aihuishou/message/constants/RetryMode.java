@@ -0,0 +1,26 @@
+package com.aihuishou.message.constants;
+
+/**
+ * how additional consumer retry waits between attempts
+ *
+ * @author js.xie
+ */
+public enum RetryMode {
+
+    /**
+     * retry on the consume thread, the thread sleeps during back off
+     */
+    BLOCKING,
+
+    /**
+     * leave retry to the broker's redelivery, the consume thread is freed right after a failed attempt and the
+     * message is redelivered on the broker's retry schedule. message is committed only when its last attempt
+     * fails, then error message handlers are invoked.
+     * <note>
+     *     redelivery follows the broker's fixed retry schedule, configuring back off fails registration. maxAttempts
+     *     is passed to the broker as max reconsume times. consumeFailedNum is not used, error message handlers are
+     *     invoked on the last attempt only. not supported when consumeMode is ORDERLY or KEY_ORDERED
+     * </note>
+     */
+    SCHEDULED
+}
@@ -0,0 +1,27 @@
+package com.aihuishou.message.consumer;
+
+import java.util.List;
+
+/**
+ * batch consumer contract
+ * <note>
+ * listener must declare consumeMode BATCH on its {@link com.aihuishou.message.annotation.MessageListener}, other modes
+ * fail on registration
+ * </note>
+ *
+ * @param <T> message type
+ * @author js.xie
+ * @see com.aihuishou.message.constants.ConsumeMode#BATCH
+ */
+public interface MqBatchListener<T> {
+
+    /**
+     * listener external message system,then handler messages of one batch
+     * <note>
+     * the batch is committed or retried as a whole
+     * </note>
+     *
+     * @param messages messages of one batch
+     */
+    void onMessages(List<T> messages);
+}
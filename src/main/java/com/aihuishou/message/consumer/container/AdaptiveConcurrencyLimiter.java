@@ -0,0 +1,155 @@
+package com.aihuishou.message.consumer.container;
+
+import com.aihuishou.message.properties.ConsumerProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * limit how many consume threads run handlers at the same time, the limit follows handler latency (AIMD)
+ * <note>
+ * every interval: when any handler failed or average latency exceeded best latency times tolerance, the limit is
+ * cut by a quarter; when the limit was reached and latency stayed within tolerance, the limit grows by one.
+ * best latency decays slowly so that a one time fast sample does not pin the baseline forever.
+ * </note>
+ *
+ * @author js.xie
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double DECREASE_FACTOR = 0.75;
+
+    private static final double BASELINE_DECAY = 1.01;
+
+    private final String name;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long intervalNanos;
+
+    private final double latencyTolerance;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition permitReleased = lock.newCondition();
+
+    private volatile int limit;
+
+    private int inFlight;
+
+    private long windowStart = System.nanoTime();
+
+    private long windowLatencyNanos;
+
+    private long windowSamples;
+
+    private long windowFailures;
+
+    private boolean windowSaturated;
+
+    private double bestLatencyNanos = Double.MAX_VALUE;
+
+    public AdaptiveConcurrencyLimiter(String name, ConsumerProperties.Concurrency concurrency) {
+        this.name = name;
+        this.minLimit = Math.max(1, concurrency.getMinConcurrency());
+        this.maxLimit = Math.max(minLimit, concurrency.getMaxConcurrency());
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(concurrency.getAdjustIntervalMillis());
+        this.latencyTolerance = concurrency.getLatencyTolerance();
+        this.limit = minLimit;
+    }
+
+    /**
+     * wait until one handler slot is free
+     */
+    public void acquire() throws InterruptedException {
+
+        lock.lock();
+        try {
+
+            while (inFlight >= limit) {
+                windowSaturated = true;
+                permitReleased.await();
+            }
+
+            inFlight++;
+
+            if (inFlight >= limit) {
+                windowSaturated = true;
+            }
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * free the slot and record handler outcome
+     *
+     * @param latencyNanos handler latency
+     * @param success      whether handler succeeded
+     */
+    public void release(long latencyNanos, boolean success) {
+
+        lock.lock();
+        try {
+
+            inFlight--;
+
+            windowLatencyNanos += latencyNanos;
+            windowSamples++;
+            if (!success) {
+                windowFailures++;
+            }
+
+            long now = System.nanoTime();
+            if (now - windowStart >= intervalNanos) {
+                adjust();
+                windowStart = now;
+            }
+
+            permitReleased.signalAll();
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    private void adjust() {
+
+        if (windowSamples == 0) {
+            return;
+        }
+
+        double averageLatencyNanos = (double) windowLatencyNanos / windowSamples;
+
+        bestLatencyNanos = Math.min(bestLatencyNanos * BASELINE_DECAY, averageLatencyNanos);
+
+        int newLimit = limit;
+
+        if (windowFailures > 0 || averageLatencyNanos > bestLatencyNanos * latencyTolerance) {
+            newLimit = Math.max(minLimit, (int) (limit * DECREASE_FACTOR));
+        } else if (windowSaturated) {
+            newLimit = Math.min(maxLimit, limit + 1);
+        }
+
+        if (newLimit != limit) {
+            log.debug("adjust concurrency of {} from {} to {}, average latency:{}us, failures:{}",
+                    name, limit, newLimit, (long) (averageLatencyNanos / 1000), windowFailures);
+            limit = newLimit;
+        }
+
+        windowLatencyNanos = 0;
+        windowSamples = 0;
+        windowFailures = 0;
+        windowSaturated = false;
+    }
+}
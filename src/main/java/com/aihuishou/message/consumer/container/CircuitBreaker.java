@@ -0,0 +1,172 @@
+package com.aihuishou.message.consumer.container;
+
+import com.aihuishou.message.properties.ConsumerProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * count based circuit breaker of one listener container
+ * <note>
+ * CLOSED: outcomes of the last windowSize messages are recorded, circuit opens when failure rate reaches threshold
+ * OPEN: nothing is dispatched for openMillis
+ * HALF_OPEN: halfOpenProbes messages are dispatched, circuit closes if all of them succeed and opens again otherwise
+ * </note>
+ *
+ * @author js.xie
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+
+    private final int minimumCalls;
+
+    private final int failureRateThreshold;
+
+    private final long openNanos;
+
+    private final int halfOpenProbes;
+
+    /**
+     * ring of last outcomes, true means failed
+     */
+    private final boolean[] window;
+
+    private int windowIndex;
+
+    private int windowCalls;
+
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+
+    private long openUntilNanos;
+
+    private int probesPermitted;
+
+    private int probesSucceeded;
+
+    public CircuitBreaker(String name, ConsumerProperties.CircuitBreaker circuitBreaker) {
+        this.name = name;
+        this.window = new boolean[Math.max(1, circuitBreaker.getWindowSize())];
+        this.minimumCalls = Math.min(Math.max(1, circuitBreaker.getMinimumCalls()), window.length);
+        this.failureRateThreshold = circuitBreaker.getFailureRateThreshold();
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(circuitBreaker.getOpenMillis());
+        this.halfOpenProbes = Math.max(1, circuitBreaker.getHalfOpenProbes());
+    }
+
+    /**
+     * ask permission to dispatch one message
+     *
+     * @return false if message must not be dispatched now, see {@link #getWaitMillis()}
+     */
+    public synchronized boolean tryAcquire() {
+
+        if (State.OPEN.equals(state) && System.nanoTime() - openUntilNanos >= 0) {
+            transitionTo(State.HALF_OPEN);
+        }
+
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (probesPermitted < halfOpenProbes) {
+                    probesPermitted++;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * record outcome of one message dispatched after {@link #tryAcquire()}
+     *
+     * @param success whether consumer handler succeeded
+     */
+    public synchronized void record(boolean success) {
+
+        switch (state) {
+            case CLOSED:
+                recordInWindow(success);
+                if (windowCalls >= minimumCalls && windowFailures * 100 >= failureRateThreshold * windowCalls) {
+                    log.warn("circuit breaker of {} open, {} of last {} messages failed", name, windowFailures, windowCalls);
+                    transitionTo(State.OPEN);
+                }
+                break;
+            case HALF_OPEN:
+                if (!success) {
+                    log.warn("circuit breaker of {} open again, probe failed", name);
+                    transitionTo(State.OPEN);
+                } else if (++probesSucceeded >= halfOpenProbes) {
+                    log.info("circuit breaker of {} closed", name);
+                    transitionTo(State.CLOSED);
+                }
+                break;
+            default:
+                // late outcome of a message dispatched before circuit opened
+                break;
+        }
+    }
+
+    /**
+     * @return how long consume threads should sleep before asking again
+     */
+    public synchronized long getWaitMillis() {
+
+        if (State.OPEN.equals(state)) {
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis(openUntilNanos - System.nanoTime()));
+        }
+
+        // half open with all probes in flight, check again shortly
+        return Math.max(1, Math.min(100, TimeUnit.NANOSECONDS.toMillis(openNanos)));
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void recordInWindow(boolean success) {
+
+        if (windowCalls == window.length) {
+            if (window[windowIndex]) {
+                windowFailures--;
+            }
+        } else {
+            windowCalls++;
+        }
+
+        window[windowIndex] = !success;
+        if (!success) {
+            windowFailures++;
+        }
+
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void transitionTo(State target) {
+
+        this.state = target;
+
+        switch (target) {
+            case OPEN:
+                openUntilNanos = System.nanoTime() + openNanos;
+                break;
+            case HALF_OPEN:
+                probesPermitted = 0;
+                probesSucceeded = 0;
+                break;
+            default:
+                windowIndex = 0;
+                windowCalls = 0;
+                windowFailures = 0;
+                break;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.aihuishou.message.consumer.container;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * admission of consume threads into a listener container, tracks messages in flight
+ * <note>
+ * paused or suspended gate holds consume threads, the broker client stops pulling once its local cache is full
+ * closed gate turns consume threads away, so that shutdown only waits for messages already in flight
+ * </note>
+ *
+ * @author js.xie
+ */
+public class ConsumeGate {
+
+    private final Object lock = new Object();
+
+    private int inFlight;
+
+    private boolean paused;
+
+    private long suspendedUntilNanos = System.nanoTime();
+
+    private boolean closed;
+
+    /**
+     * admit current consume thread, block while paused or suspended
+     *
+     * @return false if gate is closed, message must be reconsumed later
+     */
+    public boolean enter() {
+
+        synchronized (lock) {
+
+            boolean interrupted = false;
+
+            while (!closed) {
+
+                long suspendedNanos = suspendedUntilNanos - System.nanoTime();
+
+                if (!paused && suspendedNanos <= 0) {
+                    break;
+                }
+
+                try {
+                    if (paused) {
+                        lock.wait();
+                    } else {
+                        lock.wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(suspendedNanos)));
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (closed) {
+                return false;
+            }
+
+            inFlight++;
+
+            return true;
+        }
+    }
+
+    /**
+     * leave gate after {@link #enter()} returned true
+     */
+    public void exit() {
+
+        synchronized (lock) {
+
+            inFlight--;
+
+            if (inFlight == 0) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    public void pause() {
+
+        synchronized (lock) {
+            paused = true;
+        }
+    }
+
+    public void resume() {
+
+        synchronized (lock) {
+            paused = false;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * hold consume threads for a while, unlike {@link #pause()} no resume is needed
+     *
+     * @param millis how long, an earlier suspension is only ever extended
+     */
+    public void suspend(long millis) {
+
+        synchronized (lock) {
+            long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            if (until - suspendedUntilNanos > 0) {
+                suspendedUntilNanos = until;
+            }
+        }
+    }
+
+    public boolean isPaused() {
+
+        synchronized (lock) {
+            return paused;
+        }
+    }
+
+    public int getInFlight() {
+
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    /**
+     * close gate, release paused threads and wait for messages in flight
+     *
+     * @param timeoutMillis max milliseconds to wait
+     * @return messages still in flight when timeout
+     */
+    public int close(long timeoutMillis) {
+
+        synchronized (lock) {
+
+            closed = true;
+            lock.notifyAll();
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+            while (inFlight > 0) {
+
+                long waitMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (waitMillis <= 0) {
+                    break;
+                }
+
+                try {
+                    lock.wait(waitMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            return inFlight;
+        }
+    }
+
+    /**
+     * open gate again after {@link #close(long)}, eg container restarted
+     */
+    public void open() {
+
+        synchronized (lock) {
+            closed = false;
+        }
+    }
+}
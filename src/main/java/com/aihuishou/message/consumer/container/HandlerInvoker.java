@@ -0,0 +1,108 @@
+package com.aihuishou.message.consumer.container;
+
+import com.aihuishou.message.consumer.MqBatchListener;
+import com.aihuishou.message.consumer.MqListener;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.List;
+
+/**
+ * consumer handler resolved once when container start, so dispatching one message
+ * neither allocates nor goes through {@link Method#invoke}
+ *
+ * @author js.xie
+ */
+@FunctionalInterface
+public interface HandlerInvoker {
+
+    /**
+     * invoke consumer handler
+     *
+     * @param payload converted message, list of converted messages when consumeMode is BATCH
+     * @throws Exception exception thrown by consumer handler, not wrapped
+     */
+    void invoke(Object payload) throws Exception;
+
+    @SuppressWarnings("unchecked")
+    static HandlerInvoker of(MqListener mqListener) {
+        return mqListener::onMessage;
+    }
+
+    @SuppressWarnings("unchecked")
+    static HandlerInvoker of(MqBatchListener batchListener) {
+        return payload -> batchListener.onMessages((List) payload);
+    }
+
+    /**
+     * bind handler method to instance as a method handle with `(Object)void` signature
+     *
+     * @param instance      consumer instance
+     * @param handlerMethod consumer handler method with one argument
+     * @return invoker
+     */
+    static HandlerInvoker of(Object instance, Method handlerMethod) {
+
+        MethodHandle methodHandle = unreflect(instance, handlerMethod).asType(MethodType.methodType(void.class, Object.class));
+
+        return payload -> {
+            try {
+                methodHandle.invokeExact(payload);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable throwable) {
+                throw new UndeclaredThrowableException(throwable);
+            }
+        };
+    }
+
+    /**
+     * bind handler method to instance as a method handle with `(Object[])void` signature, arguments are resolved
+     * from the {@link org.springframework.messaging.Message} handed to the invoker
+     *
+     * @param instance      consumer instance
+     * @param handlerMethod consumer handler method
+     * @param parameters    arguments of handler method
+     * @return invoker
+     */
+    static HandlerInvoker of(Object instance, Method handlerMethod, HandlerMethodParameters parameters) {
+
+        if (!parameters.isMessageWrapped()) {
+            return of(instance, handlerMethod);
+        }
+
+        MethodHandle methodHandle = unreflect(instance, handlerMethod)
+                .asSpreader(Object[].class, parameters.size())
+                .asType(MethodType.methodType(void.class, Object[].class));
+
+        return payload -> {
+            Object[] args = parameters.resolve((org.springframework.messaging.Message<?>) payload);
+            try {
+                methodHandle.invokeExact(args);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable throwable) {
+                throw new UndeclaredThrowableException(throwable);
+            }
+        };
+    }
+
+    static MethodHandle unreflect(Object instance, Method handlerMethod) {
+
+        try {
+
+            ReflectionUtils.makeAccessible(handlerMethod);
+
+            return MethodHandles.lookup()
+                    .unreflect(handlerMethod)
+                    .bindTo(instance);
+
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("cannot access handler method:" + handlerMethod, e);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.aihuishou.message.consumer.container;
+
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.Headers;
+import org.springframework.messaging.handler.annotation.ValueConstants;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+
+/**
+ * arguments of one consumer handler method, resolved once when container start
+ * <note>
+ * supported: payload, {@link Message} of payload, {@link MessageHeaders}, `@Header` value converted to parameter type
+ * and `@Headers` map. a method with payload as only argument is invoked without wrapping the payload in a message
+ * </note>
+ *
+ * @author js.xie
+ */
+final class HandlerMethodParameters {
+
+    private static final ConversionService CONVERSION_SERVICE = DefaultConversionService.getSharedInstance();
+
+    private final Method method;
+
+    private final ArgumentResolver[] resolvers;
+
+    private final Type payloadType;
+
+    private final boolean messageWrapped;
+
+    private HandlerMethodParameters(Method method, ArgumentResolver[] resolvers, Type payloadType, boolean messageWrapped) {
+        this.method = method;
+        this.resolvers = resolvers;
+        this.payloadType = payloadType;
+        this.messageWrapped = messageWrapped;
+    }
+
+    /**
+     * @param method handler method of CONCURRENTLY, ORDERLY or KEY_ORDERED consumer
+     */
+    static HandlerMethodParameters of(Method method) {
+
+        int parameterCount = method.getParameterCount();
+
+        if (parameterCount == 0) {
+            throw new IllegalStateException("handler method:" + method + " must accept message payload");
+        }
+
+        ArgumentResolver[] resolvers = new ArgumentResolver[parameterCount];
+        Type payloadType = null;
+        boolean messageWrapped = parameterCount > 1;
+
+        for (int i = 0; i < parameterCount; i++) {
+
+            MethodParameter parameter = new MethodParameter(method, i);
+
+            Header header = parameter.getParameterAnnotation(Header.class);
+
+            if (null != header) {
+                resolvers[i] = headerResolver(method, parameter, header);
+                continue;
+            }
+
+            if (parameter.hasParameterAnnotation(Headers.class)) {
+                resolvers[i] = message -> message.getHeaders();
+                continue;
+            }
+
+            if (MessageHeaders.class.equals(parameter.getParameterType())) {
+                resolvers[i] = Message::getHeaders;
+                continue;
+            }
+
+            if (null != payloadType) {
+                throw new IllegalStateException("handler method:" + method + " accepts more than one payload, annotate headers with @Header");
+            }
+
+            Type parameterType = method.getGenericParameterTypes()[i];
+            Type unwrappedType = unwrapMessageType(parameterType);
+
+            if (null != unwrappedType) {
+                payloadType = unwrappedType;
+                messageWrapped = true;
+                resolvers[i] = message -> message;
+            } else {
+                payloadType = parameterType;
+                resolvers[i] = Message::getPayload;
+            }
+        }
+
+        if (null == payloadType) {
+            throw new IllegalStateException("handler method:" + method + " must accept message payload");
+        }
+
+        return new HandlerMethodParameters(method, resolvers, payloadType, messageWrapped);
+    }
+
+    /**
+     * @return payload type of {@link Message}, null if type is not a message
+     */
+    static Type unwrapMessageType(Type type) {
+
+        ResolvableType resolvableType = ResolvableType.forType(type);
+
+        if (!Message.class.equals(resolvableType.resolve())) {
+            return null;
+        }
+
+        ResolvableType payloadType = resolvableType.getGeneric(0);
+
+        return null == payloadType.resolve() ? Object.class : payloadType.getType();
+    }
+
+    /**
+     * @return type message body is decoded to
+     */
+    Type getPayloadType() {
+        return payloadType;
+    }
+
+    /**
+     * @return whether handler is invoked with {@link #resolve(Message)}, otherwise with payload itself
+     */
+    boolean isMessageWrapped() {
+        return messageWrapped;
+    }
+
+    int size() {
+        return resolvers.length;
+    }
+
+    Object[] resolve(Message<?> message) {
+
+        Object[] args = new Object[resolvers.length];
+
+        for (int i = 0; i < resolvers.length; i++) {
+            args[i] = resolvers[i].resolve(message);
+        }
+
+        return args;
+    }
+
+    private static ArgumentResolver headerResolver(Method method, MethodParameter parameter, Header header) {
+
+        String name = StringUtils.hasText(header.name()) ? header.name() : header.value();
+
+        if (!StringUtils.hasText(name)) {
+            parameter.initParameterNameDiscovery(new DefaultParameterNameDiscoverer());
+            name = parameter.getParameterName();
+        }
+
+        if (!StringUtils.hasText(name)) {
+            throw new IllegalStateException("@Header of handler method:" + method + " must name the header, parameter names are not retained");
+        }
+
+        String headerName = name;
+
+        TypeDescriptor targetType = new TypeDescriptor(parameter);
+        boolean required = header.required() && ValueConstants.DEFAULT_NONE.equals(header.defaultValue());
+        String defaultValue = ValueConstants.DEFAULT_NONE.equals(header.defaultValue()) ? null : header.defaultValue();
+
+        return message -> {
+
+            Object value = message.getHeaders().get(headerName);
+
+            if (null == value) {
+
+                if (required) {
+                    throw new IllegalStateException("missing header:" + headerName + " required by handler method:" + method);
+                }
+
+                value = defaultValue;
+            }
+
+            if (null == value || targetType.getType().isInstance(value)) {
+                return value;
+            }
+
+            return CONVERSION_SERVICE.convert(value, TypeDescriptor.forObject(value), targetType);
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "HandlerMethodParameters{method=" + method + ", payloadType=" + payloadType.getTypeName() + "}";
+    }
+
+    @FunctionalInterface
+    private interface ArgumentResolver {
+
+        Object resolve(Message<?> message);
+    }
+}
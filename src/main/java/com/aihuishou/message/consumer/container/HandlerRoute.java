@@ -0,0 +1,112 @@
+package com.aihuishou.message.consumer.container;
+
+import com.aihuishou.message.annotation.MessageListenerHandlerMethod;
+import com.aliyun.openservices.ons.api.Message;
+import lombok.Getter;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Type;
+import java.util.Objects;
+
+/**
+ * one consumer handler and the messages it accepts
+ *
+ * @author js.xie
+ * @see MessageListenerHandlerMethod
+ */
+@Getter
+public class HandlerRoute {
+
+    public static final String ANY_TAG = "*";
+
+    /**
+     * message tag, {@link #ANY_TAG} means any tag
+     */
+    private final String tag;
+
+    /**
+     * user property message must carry, null means no restriction
+     */
+    private final String property;
+
+    /**
+     * expected value of property, null means any value
+     */
+    private final String propertyValue;
+
+    /**
+     * consumer method generic argument type, element type of the list when consumeMode is BATCH
+     */
+    private final Type messageType;
+
+    /**
+     * whether handler accepts {@link org.springframework.messaging.Message} of payload rather than payload itself
+     */
+    private final boolean messageWrapped;
+
+    private final HandlerInvoker invoker;
+
+    /**
+     * handler description for logs
+     */
+    private final String description;
+
+    public HandlerRoute(String tag, String property, String propertyValue, Type messageType, HandlerInvoker invoker, String description) {
+        this(tag, property, propertyValue, messageType, false, invoker, description);
+    }
+
+    public HandlerRoute(String tag, String property, String propertyValue, Type messageType, boolean messageWrapped, HandlerInvoker invoker, String description) {
+        this.tag = StringUtils.hasText(tag) ? tag.trim() : ANY_TAG;
+        this.property = StringUtils.hasText(property) ? property : null;
+        this.propertyValue = StringUtils.hasText(propertyValue) ? propertyValue : null;
+        this.messageType = messageType;
+        this.messageWrapped = messageWrapped;
+        this.invoker = invoker;
+        this.description = description;
+    }
+
+    /**
+     * route of MqListener or MqBatchListener, `Message<Foo>` type argument makes handler receive messages of Foo
+     */
+    public static HandlerRoute any(Type messageType, HandlerInvoker invoker, String description) {
+
+        Type payloadType = HandlerMethodParameters.unwrapMessageType(messageType);
+
+        if (null != payloadType) {
+            return new HandlerRoute(ANY_TAG, null, null, payloadType, true, invoker, description);
+        }
+
+        return new HandlerRoute(ANY_TAG, null, null, messageType, false, invoker, description);
+    }
+
+    public boolean isAnyTag() {
+        return ANY_TAG.equals(tag);
+    }
+
+    public boolean hasPropertyCondition() {
+        return null != property;
+    }
+
+    boolean matchesProperty(Message message) {
+
+        if (null == property) {
+            return true;
+        }
+
+        String value = message.getUserProperties(property);
+
+        return null == propertyValue ? null != value : propertyValue.equals(value);
+    }
+
+    /**
+     * two routes with same key can never be told apart
+     */
+    String routeKey() {
+        return tag + "|" + Objects.toString(property, "") + "|" + Objects.toString(propertyValue, "");
+    }
+
+    @Override
+    public String toString() {
+        return "HandlerRoute{tag=" + tag + ", property=" + property + ", propertyValue=" + propertyValue + ", handler=" + description + "}";
+    }
+}
@@ -0,0 +1,103 @@
+package com.aihuishou.message.consumer.container;
+
+import com.aliyun.openservices.ons.api.Message;
+import com.aliyun.openservices.ons.api.MessageSelector;
+import com.aliyun.openservices.ons.api.PropertyKeyConst;
+import com.aliyun.openservices.ons.api.exception.ONSClientException;
+import com.aliyun.openservices.ons.api.impl.rocketmq.ONSConsumerAbstract;
+import com.aliyun.openservices.ons.api.impl.rocketmq.ONSUtil;
+import com.aliyun.openservices.ons.api.order.OrderAction;
+import com.aliyun.openservices.shade.com.alibaba.rocketmq.client.consumer.listener.ConsumeOrderlyContext;
+import com.aliyun.openservices.shade.com.alibaba.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import com.aliyun.openservices.shade.com.alibaba.rocketmq.client.consumer.listener.MessageListenerOrderly;
+import com.aliyun.openservices.shade.com.alibaba.rocketmq.common.message.MessageExt;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * ordered consumer handing up to batchSize messages of one queue to its listener at once
+ * <note>
+ * ons {@link com.aliyun.openservices.ons.api.order.OrderConsumer} delivers one message of a queue at a time, so
+ * messages of a queue cannot run in parallel unless acknowledged early. its rocketmq client delivers several, they are
+ * acknowledged or suspended together. a suspended batch is delivered again as a whole, messages of it that succeeded
+ * included. batches skip ons consumer interceptors and message trace
+ * </note>
+ *
+ * @author js.xie
+ * @see com.aihuishou.message.constants.ConsumeMode#KEY_ORDERED
+ */
+public class KeyOrderedConsumer extends ONSConsumerAbstract {
+
+    private volatile BatchOrderListener listener;
+
+    public KeyOrderedConsumer(Properties properties, int batchSize) {
+
+        super(properties);
+
+        defaultMQPushConsumer.setConsumeMessageBatchMaxSize(Math.max(1, batchSize));
+
+        String suspendTimeMillis = properties.getProperty(PropertyKeyConst.SuspendTimeMillis);
+        if (StringUtils.hasText(suspendTimeMillis)) {
+            defaultMQPushConsumer.setSuspendCurrentQueueTimeMillis(Long.parseLong(suspendTimeMillis));
+        }
+    }
+
+    public void subscribe(String topic, String subExpression, BatchOrderListener listener) {
+        this.listener = listener;
+        super.subscribe(topic, subExpression);
+    }
+
+    public void subscribe(String topic, MessageSelector selector, BatchOrderListener listener) {
+        this.listener = listener;
+        super.subscribe(topic, selector);
+    }
+
+    @Override
+    public void start() {
+
+        if (null == listener) {
+            throw new ONSClientException("key ordered consumer is not subscribed");
+        }
+
+        defaultMQPushConsumer.registerMessageListener(new MessageListenerOrderlyImpl());
+
+        super.start();
+    }
+
+    private final class MessageListenerOrderlyImpl implements MessageListenerOrderly {
+
+        @Override
+        public ConsumeOrderlyStatus consumeMessage(List<MessageExt> rmqMessages, ConsumeOrderlyContext context) {
+
+            List<Message> messages = new ArrayList<>(rmqMessages.size());
+
+            for (MessageExt rmqMessage : rmqMessages) {
+
+                Message message = ONSUtil.msgConvert(rmqMessage);
+                message.setMsgID(rmqMessage.getMsgId());
+
+                messages.add(message);
+            }
+
+            if (OrderAction.Success.equals(listener.consume(messages))) {
+                return ConsumeOrderlyStatus.SUCCESS;
+            }
+
+            return ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
+        }
+    }
+
+    /**
+     * consume messages of one queue in queue order
+     */
+    public interface BatchOrderListener {
+
+        /**
+         * @return Success to acknowledge every message, Suspend to deliver all of them again
+         */
+        OrderAction consume(List<Message> messages);
+    }
+}
@@ -0,0 +1,274 @@
+package com.aihuishou.message.consumer.container;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * fans the messages of one ordered batch out to N single thread lanes chosen by message key,
+ * messages with same key run one after another in batch order while different keys run in parallel
+ * <note>
+ * the caller waits until every message of its batch is done, so the batch is acknowledged only after it ran. once a
+ * message fails and is not given up, messages of same key behind it are held back and the batch must be delivered
+ * again. every lane queues at most windowPerLane messages, a busy lane does not hold the others up
+ * </note>
+ *
+ * @author js.xie
+ * @see com.aihuishou.message.constants.ConsumeMode#KEY_ORDERED
+ */
+public class KeyOrderedDispatcher {
+
+    /**
+     * stands for null key, concurrent sets do not take null
+     */
+    private static final Object NULL_KEY = new Object();
+
+    private final ExecutorService[] lanes;
+
+    private final Semaphore[] windows;
+
+    private volatile boolean closed;
+
+    /**
+     * @param name          lane thread name prefix
+     * @param laneCount     number of lanes, keys in parallel
+     * @param windowPerLane max tasks queued on one lane
+     */
+    public KeyOrderedDispatcher(String name, int laneCount, int windowPerLane) {
+
+        this.lanes = new ExecutorService[Math.max(1, laneCount)];
+        this.windows = new Semaphore[lanes.length];
+
+        for (int i = 0; i < lanes.length; i++) {
+
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(name + "-lane-" + i + "-");
+            threadFactory.setDaemon(true);
+
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory);
+            windows[i] = new Semaphore(Math.max(1, windowPerLane));
+        }
+    }
+
+    /**
+     * run tasks on the lanes of their keys and wait until every one of them is done
+     *
+     * @param tasks tasks of one batch in queue order
+     * @return true if every task succeeded or was given up, false if one failed, was held back or dispatcher closed,
+     * the batch must be delivered again then
+     */
+    public boolean runAll(List<? extends KeyedTask> tasks) {
+
+        if (closed) {
+            return false;
+        }
+
+        Batch batch = new Batch(tasks.size());
+
+        boolean interrupted = false;
+
+        int submitted = 0;
+
+        for (KeyedTask task : tasks) {
+
+            int lane = laneOf(task.getKey());
+
+            try {
+                windows[lane].acquire();
+            } catch (InterruptedException e) {
+                interrupted = true;
+                break;
+            }
+
+            try {
+                lanes[lane].execute(new LaneTask(batch, lane, task));
+            } catch (RejectedExecutionException e) {
+                windows[lane].release();
+                break;
+            }
+
+            submitted++;
+        }
+
+        // tasks never submitted fail the batch, tasks behind them are not run
+        if (submitted < tasks.size()) {
+            batch.cancel(tasks.size() - submitted);
+        }
+
+        // tasks already running are waited for, the batch is not delivered again while they run
+        while (true) {
+            try {
+                batch.remaining.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        return !batch.failed;
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * stop accepting batches, wait for queued tasks, then cancel those not started
+     *
+     * @param timeoutMillis max milliseconds to wait
+     * @return tasks cancelled, their batches are delivered again
+     */
+    public int close(long timeoutMillis) {
+
+        closed = true;
+
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        try {
+
+            for (ExecutorService lane : lanes) {
+                lane.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        int cancelled = 0;
+
+        for (ExecutorService lane : lanes) {
+            for (Runnable queued : lane.shutdownNow()) {
+                ((LaneTask) queued).cancel();
+                cancelled++;
+            }
+        }
+
+        return cancelled;
+    }
+
+    private int laneOf(Object key) {
+
+        if (null == key || lanes.length == 1) {
+            return 0;
+        }
+
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+
+        return (hash & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    /**
+     * progress of one batch
+     */
+    private static final class Batch {
+
+        private final CountDownLatch remaining;
+
+        /**
+         * keys whose failed task was not given up, their later tasks are held back
+         */
+        private final Set<Object> heldKeys = ConcurrentHashMap.newKeySet();
+
+        private volatile boolean failed;
+
+        private Batch(int size) {
+            this.remaining = new CountDownLatch(size);
+        }
+
+        private void cancel(int tasks) {
+
+            failed = true;
+
+            for (int i = 0; i < tasks; i++) {
+                remaining.countDown();
+            }
+        }
+    }
+
+    private final class LaneTask implements Runnable {
+
+        private final Batch batch;
+
+        private final int lane;
+
+        private final KeyedTask task;
+
+        private final Object key;
+
+        private LaneTask(Batch batch, int lane, KeyedTask task) {
+            this.batch = batch;
+            this.lane = lane;
+            this.task = task;
+            this.key = null == task.getKey() ? NULL_KEY : task.getKey();
+        }
+
+        @Override
+        public void run() {
+
+            try {
+
+                // a task of same key failed before, tasks of one key run on one lane in order
+                if (batch.failed && batch.heldKeys.contains(key)) {
+                    return;
+                }
+
+                try {
+
+                    task.run();
+
+                } catch (Exception e) {
+
+                    if (!task.onFailure(e)) {
+                        batch.heldKeys.add(key);
+                        batch.failed = true;
+                    }
+                }
+
+            } finally {
+                windows[lane].release();
+                batch.remaining.countDown();
+            }
+        }
+
+        private void cancel() {
+            windows[lane].release();
+            batch.cancel(1);
+        }
+    }
+
+    /**
+     * consumer handler invocation of one message
+     */
+    public interface KeyedTask {
+
+        /**
+         * @return ordering key, tasks of same key run in order, null is a key too
+         */
+        Object getKey();
+
+        void run() throws Exception;
+
+        /**
+         * @return true to give task up, it counts as done and tasks behind it proceed,
+         * false to hold tasks of same key back and fail the batch
+         */
+        boolean onFailure(Exception e);
+    }
+}
@@ -0,0 +1,108 @@
+package com.aihuishou.message.consumer.container;
+
+import com.aihuishou.message.annotation.MessageListener;
+import com.aihuishou.message.converter.MessageHeaderCodec;
+import com.aliyun.openservices.ons.api.Message;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.SimpleEvaluationContext;
+
+import java.util.Properties;
+
+/**
+ * spel filter evaluated against tag, keys and user properties before the body is decoded
+ *
+ * @author js.xie
+ * @see MessageListener#filterExpression()
+ */
+public class MessageFilter {
+
+    private final String expressionString;
+
+    private final Expression expression;
+
+    /**
+     * read only, shared by all consume threads
+     */
+    private final EvaluationContext evaluationContext = SimpleEvaluationContext.forReadOnlyDataBinding()
+            .withInstanceMethods()
+            .build();
+
+    /**
+     * parse expression, evaluations are compiled to bytecode once they warm up
+     *
+     * @param expressionString eg `header('tenant') == 'cn' and tag != 'test'`
+     * @throws org.springframework.expression.ParseException malformed expression
+     */
+    public MessageFilter(String expressionString) {
+
+        SpelParserConfiguration configuration = new SpelParserConfiguration(SpelCompilerMode.MIXED, MessageFilter.class.getClassLoader());
+
+        this.expressionString = expressionString;
+        this.expression = new SpelExpressionParser(configuration).parseExpression(expressionString);
+    }
+
+    /**
+     * @return true if message should be consumed
+     */
+    public boolean accept(Message message) {
+
+        Boolean accepted = expression.getValue(evaluationContext, new FilterRoot(message), Boolean.class);
+
+        return Boolean.TRUE.equals(accepted);
+    }
+
+    @Override
+    public String toString() {
+        return "MessageFilter{" + expressionString + "}";
+    }
+
+    /**
+     * root object of filter expression
+     */
+    public static class FilterRoot {
+
+        private final Message message;
+
+        FilterRoot(Message message) {
+            this.message = message;
+        }
+
+        public String getTag() {
+            return message.getTag();
+        }
+
+        public String getKey() {
+            return message.getKey();
+        }
+
+        public String getTopic() {
+            return message.getTopic();
+        }
+
+        public int getReconsumeTimes() {
+            return message.getReconsumeTimes();
+        }
+
+        /**
+         * user properties as they are on the wire, headers sent by MqTemplate carry `USERS_` prefix
+         */
+        public Properties getProperties() {
+            return message.getUserProperties();
+        }
+
+        /**
+         * @param name header name sent by MqTemplate, or raw user property name
+         * @return value, null if absent
+         */
+        public String header(String name) {
+
+            String value = message.getUserProperties(MessageHeaderCodec.USER_PROPERTY_PREFIX + name);
+
+            return null != value ? value : message.getUserProperties(name);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.aihuishou.message.consumer.container;
+
+import com.aliyun.openservices.ons.api.Message;
+import org.springframework.util.Assert;
+
+import java.util.*;
+
+/**
+ * routing table built once when container start, pick consumer handler of each message by tag and user property
+ * <note>
+ *     routes of exact tag are tried before routes of any tag, routes with user property condition before routes without
+ * </note>
+ *
+ * @author js.xie
+ */
+public class MessageHandlerRouter {
+
+    private static final HandlerRoute[] NO_ROUTES = new HandlerRoute[0];
+
+    private static final Comparator<HandlerRoute> SPECIFIC_FIRST = Comparator.comparing(route -> route.hasPropertyCondition() ? 0 : 1);
+
+    /**
+     * the only route when it accepts any message, skip lookup
+     */
+    private final HandlerRoute single;
+
+    private final Map<String, HandlerRoute[]> tagRoutes;
+
+    private final HandlerRoute[] anyTagRoutes;
+
+    private final List<HandlerRoute> routes;
+
+    private MessageHandlerRouter(List<HandlerRoute> routes) {
+
+        this.routes = Collections.unmodifiableList(new ArrayList<>(routes));
+
+        Map<String, List<HandlerRoute>> byTag = new HashMap<>();
+        List<HandlerRoute> anyTag = new ArrayList<>();
+
+        for (HandlerRoute route : routes) {
+            if (route.isAnyTag()) {
+                anyTag.add(route);
+            } else {
+                byTag.computeIfAbsent(route.getTag(), tag -> new ArrayList<>()).add(route);
+            }
+        }
+
+        Map<String, HandlerRoute[]> table = new HashMap<>(byTag.size() * 2);
+        byTag.forEach((tag, tagRouteList) -> table.put(tag, sorted(tagRouteList)));
+
+        this.tagRoutes = table;
+        this.anyTagRoutes = sorted(anyTag);
+
+        HandlerRoute only = routes.size() == 1 ? routes.get(0) : null;
+        this.single = null != only && only.isAnyTag() && !only.hasPropertyCondition() ? only : null;
+    }
+
+    public static MessageHandlerRouter of(List<HandlerRoute> routes) {
+
+        Assert.notEmpty(routes, "at least one consumer handler is required");
+
+        Set<String> routeKeys = new HashSet<>();
+        for (HandlerRoute route : routes) {
+            if (!routeKeys.add(route.routeKey())) {
+                throw new IllegalStateException("duplicate consumer handler for tag:" + route.getTag() + ", property:" + route.getProperty()
+                        + ", propertyValue:" + route.getPropertyValue() + ", handler:" + route.getDescription());
+            }
+        }
+
+        return new MessageHandlerRouter(routes);
+    }
+
+    /**
+     * pick consumer handler of message
+     *
+     * @param message ons message
+     * @return matched route, null if no handler accept the message
+     */
+    public HandlerRoute route(Message message) {
+
+        if (null != single) {
+            return single;
+        }
+
+        HandlerRoute[] candidates = null == message.getTag() ? NO_ROUTES : tagRoutes.getOrDefault(message.getTag(), NO_ROUTES);
+
+        for (HandlerRoute candidate : candidates) {
+            if (candidate.matchesProperty(message)) {
+                return candidate;
+            }
+        }
+
+        for (HandlerRoute candidate : anyTagRoutes) {
+            if (candidate.matchesProperty(message)) {
+                return candidate;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * whether every message goes to the same handler
+     */
+    public boolean isSingle() {
+        return null != single;
+    }
+
+    public List<HandlerRoute> getRoutes() {
+        return routes;
+    }
+
+    private static HandlerRoute[] sorted(List<HandlerRoute> routes) {
+        HandlerRoute[] array = routes.toArray(NO_ROUTES);
+        Arrays.sort(array, SPECIFIC_FIRST);
+        return array;
+    }
+}
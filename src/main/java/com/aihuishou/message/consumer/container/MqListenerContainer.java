@@ -4,13 +4,20 @@ import com.aihuishou.message.annotation.MessageListenerHandlerMethod;
 import com.aihuishou.message.annotation.MessageRetryTemplate;
 import com.aihuishou.message.constants.ConsumeMode;
 import com.aihuishou.message.constants.MqListenerContainerConstants;
+import com.aihuishou.message.constants.RetryMode;
+import com.aihuishou.message.consumer.MqBatchListener;
 import com.aihuishou.message.consumer.MqListener;
+import com.aihuishou.message.consumer.dedup.DuplicateMessageFilter;
 import com.aihuishou.message.converter.MessageConverter;
-import com.aihuishou.message.error.ErrorMessageHandlerStrategy;
+import com.aihuishou.message.error.ErrorMessagePipeline;
+import com.aihuishou.message.error.FailedMessage;
+import com.aihuishou.message.properties.ConsumerContainerProperties;
 import com.aihuishou.message.properties.ConsumerProperties;
 import com.aihuishou.message.properties.ServerProperties;
 import com.aihuishou.message.util.ClassUtils;
 import com.aliyun.openservices.ons.api.*;
+import com.aliyun.openservices.ons.api.batch.BatchConsumer;
+import com.aliyun.openservices.ons.api.batch.BatchMessageListener;
 import com.aliyun.openservices.ons.api.order.ConsumeOrderContext;
 import com.aliyun.openservices.ons.api.order.MessageOrderListener;
 import com.aliyun.openservices.ons.api.order.OrderAction;
@@ -19,6 +26,8 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.retry.RetryCallback;
 import org.springframework.retry.backoff.ExponentialBackOffPolicy;
 import org.springframework.retry.policy.SimpleRetryPolicy;
@@ -27,12 +36,15 @@ import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
 import javax.annotation.PreDestroy;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
-import java.util.concurrent.CompletableFuture;
 
 /**
  * consumer instance
@@ -42,6 +54,16 @@ import java.util.concurrent.CompletableFuture;
 @Slf4j
 public class MqListenerContainer {
 
+    /**
+     * max messages queued on one lane of key ordered consumer
+     */
+    private static final int KEY_ORDERED_WINDOW_PER_LANE = 16;
+
+    /**
+     * messages of one queue fanned out to lanes at once when consumeBatchMaxSize is not set
+     */
+    private static final int KEY_ORDERED_BATCH_SIZE = 32;
+
     /**
      * broker properties eg name server address and so on
      * globally unique
@@ -75,22 +97,34 @@ public class MqListenerContainer {
     private MqListener mqListener;
 
     /**
-     * consumer method argument type
+     * handler when not use {@link MessageListenerHandlerMethod} annotation but implement MqBatchListener
      *
-     * @see MqListenerContainerConstants#PROP_CONSUMER_METHOD_PARAMETER_TYPE
+     * @see MqListenerContainerConstants#PROP_MQ_BATCH_LISTENER
      */
     @Setter
     @Getter
+    private MqBatchListener batchListener;
+
+    /**
+     * consumer method argument type when implement MqListener or MqBatchListener,
+     * element type of the list when consumeMode is BATCH
+     */
+    @Getter
     private Class messageType;
 
     /**
-     * consumer handler method when use {@link MessageListenerHandlerMethod} annotation
+     * messageType with its generics, eg `List<Foo>` of `MqListener<List<Foo>>`
+     */
+    private Type messageGenericType;
+
+    /**
+     * consumer handler methods when use {@link MessageListenerHandlerMethod} annotation, routed by tag and user property
      *
-     * @see MqListenerContainerConstants#PROP_CONSUME_HANDLER_METHOD
+     * @see MqListenerContainerConstants#PROP_CONSUME_HANDLER_METHODS
      */
     @Setter
     @Getter
-    private Method handlerMethod;
+    private List<Method> handlerMethods;
 
     /**
      * consumer instance when use {@link MessageListenerHandlerMethod} annotation
@@ -118,15 +152,81 @@ public class MqListenerContainer {
      */
     private OrderConsumer orderConsumer;
 
+    /**
+     * batch consumer
+     */
+    private BatchConsumer batchConsumer;
+
+    /**
+     * key ordered consumer
+     */
+    private KeyOrderedConsumer keyOrderedConsumer;
+
+    /**
+     * lanes of key ordered consumer
+     */
+    private KeyOrderedDispatcher keyOrderedDispatcher;
+
+    /**
+     * retry of broker redelivery when retry mode is SCHEDULED, null otherwise
+     */
+    private ConsumerProperties.Retry scheduledRetry;
+
+    /**
+     * filter expression compiled when container start, null when consume all
+     */
+    private MessageFilter messageFilter;
+
+    /**
+     * duplicate delivery filter, null when disabled
+     */
+    private DuplicateMessageFilter duplicateMessageFilter;
+
+    /**
+     * adaptive concurrency limiter, null when consumeThreadNum is fixed
+     */
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired(required = false)
+    private MqListenerContainerMetricsFactory metricsFactory;
+
+    /**
+     * meters of this container, registered when container start
+     */
+    private MqListenerContainerMetrics metrics = MqListenerContainerMetrics.NOOP;
+
+    /**
+     * consumer handlers resolved when container start
+     */
+    private MessageHandlerRouter router;
+
+    /**
+     * admission of consume threads, closed when container stop so that messages in flight drain
+     */
+    private final ConsumeGate consumeGate = new ConsumeGate();
+
+    @Autowired(required = false)
+    private ConsumerContainerProperties containerProperties;
+
+    /**
+     * stops dispatching while downstream is failing, null when disabled
+     */
+    private CircuitBreaker circuitBreaker;
+
+    /**
+     * stateless, shared by all consume threads
+     */
+    private final MessageListenerMethodHandler messageListenerMethodHandler = new MessageListenerMethodHandler();
+
     @Autowired(required = false)
     @MessageRetryTemplate
     private RetryTemplate retryTemplate;
 
     /**
-     * error message handlers
+     * hands error messages to error message handlers off consume threads
      */
     @Autowired(required = false)
-    private List<ErrorMessageHandlerStrategy> errorMessageHandlerStrategies;
+    private ErrorMessagePipeline errorMessagePipeline;
 
     public void start() {
 
@@ -136,9 +236,41 @@ public class MqListenerContainer {
 
             // parse message type
             if (null != mqListener) {
+                this.messageGenericType = ClassUtils.getMethodParameterGenericType(mqListener.getClass(), MqListener.class);
                 this.messageType = ClassUtils.getMethodParameterType(mqListener.getClass());
             }
 
+            if (null != batchListener) {
+                this.messageGenericType = ClassUtils.getMethodParameterGenericType(batchListener.getClass(), MqBatchListener.class);
+                this.messageType = ClassUtils.getMethodParameterType(batchListener.getClass(), MqBatchListener.class);
+            }
+
+            // resolve consumer handlers once, they are shared by all consume threads
+            this.router = MessageHandlerRouter.of(resolveHandlerRoutes());
+
+            ConsumerProperties.Retry retry = consumerProperties.getRetry();
+            if (null != retry && RetryMode.SCHEDULED.equals(retry.getMode())) {
+                this.scheduledRetry = retry;
+            }
+
+            if (null != metricsFactory) {
+                this.metrics = metricsFactory.create(consumerProperties);
+            }
+
+            if (StringUtils.hasText(consumerProperties.getFilterExpression())) {
+                this.messageFilter = new MessageFilter(consumerProperties.getFilterExpression());
+            }
+
+            if (null != consumerProperties.getCircuitBreaker()) {
+                this.circuitBreaker = new CircuitBreaker(consumerProperties.getConsumerGroup(), consumerProperties.getCircuitBreaker());
+            }
+
+            if (null != consumerProperties.getDedup()) {
+                this.duplicateMessageFilter = DuplicateMessageFilter.create(consumerProperties.getConsumerGroup(), consumerProperties.getDedup());
+            }
+
+            consumeGate.open();
+
             if (consumer != null) {
                 consumer.start();
             }
@@ -147,6 +279,14 @@ public class MqListenerContainer {
                 orderConsumer.start();
             }
 
+            if (batchConsumer != null) {
+                batchConsumer.start();
+            }
+
+            if (keyOrderedConsumer != null) {
+                keyOrderedConsumer.start();
+            }
+
 
             this.setStarted(true);
 
@@ -159,8 +299,14 @@ public class MqListenerContainer {
     @PreDestroy
     public void stop() {
 
+        if (!this.isStarted()) {
+            return;
+        }
+
         this.setStarted(false);
 
+        // stop pulling first, the client drops deliveries not yet handed to the listener and ignores the result of
+        // those turned away by the closed gate, so they are delivered again without counting as a failed attempt
         if (Objects.nonNull(consumer)) {
             consumer.shutdown();
         }
@@ -169,12 +315,133 @@ public class MqListenerContainer {
             orderConsumer.shutdown();
         }
 
+        if (Objects.nonNull(batchConsumer)) {
+            batchConsumer.shutdown();
+        }
+
+        if (Objects.nonNull(keyOrderedConsumer)) {
+            keyOrderedConsumer.shutdown();
+        }
+
+        // let handlers in flight finish, key ordered lanes included
+        ConsumerContainerProperties.Lifecycle lifecycle = null != containerProperties ? containerProperties.getLifecycle() : new ConsumerContainerProperties.Lifecycle();
+        long drainTimeoutMillis = lifecycle.getDrainTimeoutMillis();
+        int undrained = consumeGate.close(drainTimeoutMillis);
+        if (undrained > 0) {
+            log.warn("container stop with {} messages still in flight after {}ms, {}", undrained, drainTimeoutMillis, this.toString());
+        }
+
+        if (Objects.nonNull(keyOrderedDispatcher)) {
+            // lanes were drained with the gate, batches of what is left are not acknowledged
+            int cancelled = keyOrderedDispatcher.close(0);
+            if (cancelled > 0) {
+                log.warn("container destroyed with {} key ordered messages not run, they are delivered again, {}", cancelled, this.toString());
+            }
+        }
+
+        if (Objects.nonNull(duplicateMessageFilter)) {
+            duplicateMessageFilter.close();
+        }
+
         log.info("container destroyed, {}", this.toString());
     }
 
 
+    /**
+     * hold consume threads until {@link #resume()}, messages in flight still finish
+     * <note>
+     *     broker keeps delivering into the client's local cache until the cache is full
+     * </note>
+     */
+    public void pause() {
+        consumeGate.pause();
+        log.info("container paused, {}", this.toString());
+    }
+
+    public void resume() {
+        consumeGate.resume();
+        log.info("container resumed, {}", this.toString());
+    }
+
+    public boolean isPaused() {
+        return consumeGate.isPaused();
+    }
+
+    /**
+     * @return messages handed to handlers and not finished yet
+     */
+    public int getInFlight() {
+        return consumeGate.getInFlight();
+    }
+
+    /**
+     * consume message with this container's handlers on the calling thread, bypass the broker
+     *
+     * @param message eg one replayed dead letter
+     * @throws Exception exception thrown by handler
+     */
+    public void replay(Message message) throws Exception {
+
+        Assert.state(isStarted(), "container is not started");
+
+        if (ConsumeMode.BATCH.equals(consumerProperties.getConsumeMode())) {
+            messageListenerMethodHandler.doConsume(Collections.singletonList(message));
+        } else {
+            messageListenerMethodHandler.doConsume(message);
+        }
+    }
+
+    private List<HandlerRoute> resolveHandlerRoutes() {
+
+        if (null != mqListener) {
+            return Collections.singletonList(HandlerRoute.any(messageGenericType, HandlerInvoker.of(mqListener), mqListener.getClass().getName()));
+        }
+
+        if (null != batchListener) {
+            return Collections.singletonList(HandlerRoute.any(messageGenericType, HandlerInvoker.of(batchListener), batchListener.getClass().getName()));
+        }
+
+        Assert.notEmpty(handlerMethods, "Property 'handlerMethods' is required when not implement MqListener or MqBatchListener");
+
+        boolean batch = ConsumeMode.BATCH.equals(consumerProperties.getConsumeMode());
+
+        List<HandlerRoute> routes = new ArrayList<>(handlerMethods.size());
+
+        for (Method method : handlerMethods) {
+
+            MessageListenerHandlerMethod annotation = AnnotationUtils.findAnnotation(method, MessageListenerHandlerMethod.class);
+
+            if (batch) {
+
+                // List<Foo> or List<Message<Foo>>
+                Type elementType = ClassUtils.getBatchMethodParameterGenericType(method);
+                Type payloadType = HandlerMethodParameters.unwrapMessageType(elementType);
+
+                routes.add(new HandlerRoute(annotation.tag(), annotation.property(), annotation.propertyValue(),
+                        null != payloadType ? payloadType : elementType, null != payloadType,
+                        HandlerInvoker.of(instance, method), method.toGenericString()));
+
+                continue;
+            }
+
+            HandlerMethodParameters parameters = HandlerMethodParameters.of(method);
+
+            routes.add(new HandlerRoute(annotation.tag(), annotation.property(), annotation.propertyValue(),
+                    parameters.getPayloadType(), parameters.isMessageWrapped(),
+                    HandlerInvoker.of(instance, method, parameters), method.toGenericString()));
+        }
+
+        return routes;
+    }
+
     private void initMQConsumer() {
 
+        ConsumerProperties.Retry retry = consumerProperties.getRetry();
+        if (null != retry && RetryMode.SCHEDULED.equals(retry.getMode())
+                && (consumerProperties.getConsumeMode().equals(ConsumeMode.ORDERLY) || consumerProperties.getConsumeMode().equals(ConsumeMode.KEY_ORDERED))) {
+            throw new IllegalArgumentException("Retry mode SCHEDULED is not supported when consumeMode is " + consumerProperties.getConsumeMode() + ".");
+        }
+
         Assert.notNull(consumerProperties.getConsumerGroup(), "Property 'consumerGroup' is required");
         Assert.notNull(serverProperties.getAccessKey(), "Property 'accessKey' is required");
         Assert.notNull(serverProperties.getSecretKey(), "Property 'secretKey' is required");
@@ -186,7 +453,19 @@ public class MqListenerContainer {
         properties.put(PropertyKeyConst.ConsumerId, consumerProperties.getConsumerGroup());
 
         if (consumerProperties.getConsumeThreadNum() != null) {
-            properties.put(PropertyKeyConst.ConsumeThreadNums, consumerProperties.getConsumeThreadNum());
+            properties.put(PropertyKeyConst.ConsumeThreadNums, String.valueOf(consumerProperties.getConsumeThreadNum()));
+        }
+
+        // consume threads are sized to the upper bound, the limiter decides how many of them run handlers
+        ConsumerProperties.Concurrency concurrency = consumerProperties.getConcurrency();
+        if (null != concurrency && (consumerProperties.getConsumeMode().equals(ConsumeMode.CONCURRENTLY) || consumerProperties.getConsumeMode().equals(ConsumeMode.BATCH))) {
+            properties.put(PropertyKeyConst.ConsumeThreadNums, String.valueOf(concurrency.getMaxConcurrency()));
+            this.concurrencyLimiter = new AdaptiveConcurrencyLimiter(consumerProperties.getConsumerGroup(), concurrency);
+        }
+
+        // broker redelivers until the container commits the last attempt
+        if (null != retry && RetryMode.SCHEDULED.equals(retry.getMode())) {
+            properties.put(PropertyKeyConst.MaxReconsumeTimes, String.valueOf(Math.max(0, retry.getMaxAttempts() - 1)));
         }
 
         if (StringUtils.hasText(serverProperties.getNameServer())) {
@@ -202,12 +481,36 @@ public class MqListenerContainer {
 
             this.orderConsumer = ONSFactory.createOrderedConsumer(properties);
 
+            MessageOrderListener messageListener = new DefaultMessageListenerOrderly();
+
+            switch (consumerProperties.getSelectorType()) {
+                case TAG:
+                    orderConsumer.subscribe(consumerProperties.getTopic(), consumerProperties.getSelectorExpress(), messageListener);
+                    break;
+                case SQL92:
+                    orderConsumer.subscribe(consumerProperties.getTopic(), MessageSelector.bySql(consumerProperties.getSelectorExpress()), messageListener);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Property 'selectorType' was wrong.");
+            }
+
+        }
+
+        // key ordered consumer will be initialized, it fans batches of each queue out by key
+        if (consumerProperties.getConsumeMode().equals(ConsumeMode.KEY_ORDERED)) {
+
+            int laneCount = consumerProperties.getConsumeThreadNum() != null ? consumerProperties.getConsumeThreadNum() : 1;
+            int batchSize = consumerProperties.getConsumeBatchMaxSize() != null ? consumerProperties.getConsumeBatchMaxSize() : KEY_ORDERED_BATCH_SIZE;
+
+            this.keyOrderedDispatcher = new KeyOrderedDispatcher(consumerProperties.getConsumerGroup(), laneCount, KEY_ORDERED_WINDOW_PER_LANE);
+            this.keyOrderedConsumer = new KeyOrderedConsumer(properties, batchSize);
+
             switch (consumerProperties.getSelectorType()) {
                 case TAG:
-                    orderConsumer.subscribe(consumerProperties.getTopic(), consumerProperties.getSelectorExpress(), new DefaultMessageListenerOrderly());
+                    keyOrderedConsumer.subscribe(consumerProperties.getTopic(), consumerProperties.getSelectorExpress(), new DefaultMessageListenerKeyOrdered());
                     break;
                 case SQL92:
-                    orderConsumer.subscribe(consumerProperties.getTopic(), MessageSelector.bySql(consumerProperties.getSelectorExpress()), new DefaultMessageListenerOrderly());
+                    keyOrderedConsumer.subscribe(consumerProperties.getTopic(), MessageSelector.bySql(consumerProperties.getSelectorExpress()), new DefaultMessageListenerKeyOrdered());
                     break;
                 default:
                     throw new IllegalArgumentException("Property 'selectorType' was wrong.");
@@ -233,6 +536,62 @@ public class MqListenerContainer {
 
         }
 
+        // batch consumer will be initialized
+        if (consumerProperties.getConsumeMode().equals(ConsumeMode.BATCH)) {
+
+            if (consumerProperties.getConsumeBatchMaxSize() != null) {
+                properties.put(PropertyKeyConst.ConsumeMessageBatchMaxSize, String.valueOf(consumerProperties.getConsumeBatchMaxSize()));
+            }
+
+            if (consumerProperties.getBatchMaxAwaitSeconds() != null && consumerProperties.getBatchMaxAwaitSeconds() > 0) {
+                properties.put(PropertyKeyConst.BatchConsumeMaxAwaitDurationInSeconds, String.valueOf(consumerProperties.getBatchMaxAwaitSeconds()));
+            }
+
+            this.batchConsumer = ONSFactory.createBatchConsumer(properties);
+
+            switch (consumerProperties.getSelectorType()) {
+                case TAG:
+                    batchConsumer.subscribe(consumerProperties.getTopic(), consumerProperties.getSelectorExpress(), new DefaultBatchMessageListener());
+                    break;
+                case SQL92:
+                    throw new IllegalArgumentException("Property 'selectorType' SQL92 is not supported when consumeMode is BATCH.");
+                default:
+                    throw new IllegalArgumentException("Property 'selectorType' was wrong.");
+            }
+
+        }
+
+    }
+
+    /**
+     * let current consume thread dispatch, sleep it while paused or circuit is open
+     *
+     * @return false if container is stopping
+     */
+    private boolean admit() {
+
+        while (consumeGate.enter()) {
+
+            if (null == circuitBreaker || circuitBreaker.tryAcquire()) {
+                return true;
+            }
+
+            consumeGate.exit();
+
+            // every consume thread sleeps on the gate until the circuit may let probes through
+            consumeGate.suspend(circuitBreaker.getWaitMillis());
+        }
+
+        return false;
+    }
+
+    private void release(boolean success) {
+
+        if (null != circuitBreaker) {
+            circuitBreaker.record(success);
+        }
+
+        consumeGate.exit();
     }
 
     /**
@@ -243,18 +602,40 @@ public class MqListenerContainer {
         @Override
         public Action consume(final Message message, final ConsumeContext context) {
 
+            if (!admit()) {
+                return Action.ReconsumeLater;
+            }
+
+            boolean success = false;
+
             try {
 
-                new MessageListenerMethodHandler().doConsume(message);
+                if (null == concurrencyLimiter) {
+                    messageListenerMethodHandler.doConsume(message);
+                } else {
+                    messageListenerMethodHandler.doConsumeLimited(message, null);
+                }
+
+                success = true;
 
             } catch (Exception e) {
 
                 log.error("consume message failed. message:{},exception:{}", message, e.getMessage(), e);
 
-                handleErrorMessage(message, e);
+                if (isLastScheduledAttempt(Collections.singletonList(message))) {
+                    onRetryExhausted(Collections.singletonList(message), e);
+                    return Action.CommitMessage;
+                }
+
+                // dead lettered, reconsuming it would record it again
+                if (handleErrorMessage(message, e)) {
+                    return Action.CommitMessage;
+                }
 
                 return Action.ReconsumeLater;
 
+            } finally {
+                release(success);
             }
 
             return Action.CommitMessage;
@@ -269,56 +650,456 @@ public class MqListenerContainer {
         @Override
         public OrderAction consume(final Message message, final ConsumeOrderContext context) {
 
+            if (!admit()) {
+                return OrderAction.Suspend;
+            }
+
+            boolean success = false;
+
             try {
 
-                new MessageListenerMethodHandler().doConsume(message);
+                messageListenerMethodHandler.doConsume(message);
+
+                success = true;
 
             } catch (Exception e) {
 
                 log.error("consume message failed. message:{},exception:{}", message, e.getMessage(), e);
 
-                handleErrorMessage(message, e);
+                // dead lettered, messages behind it proceed
+                if (handleErrorMessage(message, e)) {
+                    return OrderAction.Success;
+                }
 
                 return OrderAction.Suspend;
+
+            } finally {
+                release(success);
             }
 
             return OrderAction.Success;
         }
     }
 
+    /**
+     * key ordered message listener implemention, messages of a queue are handed to the lanes of their keys
+     * <note>
+     *     batch is acknowledged once every message of it is done, a failed message holds messages of its key behind it
+     *     back and the batch is suspended, so the whole batch is delivered again
+     * </note>
+     */
+    public class DefaultMessageListenerKeyOrdered implements KeyOrderedConsumer.BatchOrderListener {
+
+        @Override
+        public OrderAction consume(final List<Message> messages) {
+
+            if (!admit()) {
+                return OrderAction.Suspend;
+            }
+
+            boolean success = false;
+
+            try {
+
+                List<KeyOrderedTask> tasks = new ArrayList<>(messages.size());
+                for (Message message : messages) {
+                    tasks.add(new KeyOrderedTask(message, orderKey(message)));
+                }
+
+                success = keyOrderedDispatcher.runAll(tasks);
+
+            } finally {
+                release(success);
+            }
+
+            return success ? OrderAction.Success : OrderAction.Suspend;
+        }
+
+        private Object orderKey(final Message message) {
+
+            String orderKeyProperty = consumerProperties.getOrderKeyProperty();
+
+            if (StringUtils.hasText(orderKeyProperty)) {
+                return message.getUserProperties(orderKeyProperty);
+            }
+
+            return message.getKey();
+        }
+    }
+
+    private class KeyOrderedTask implements KeyOrderedDispatcher.KeyedTask {
+
+        private final Message message;
+
+        private final Object key;
+
+        private KeyOrderedTask(Message message, Object key) {
+            this.message = message;
+            this.key = key;
+        }
+
+        @Override
+        public Object getKey() {
+            return key;
+        }
+
+        @Override
+        public void run() throws Exception {
+            messageListenerMethodHandler.doConsume(message);
+        }
+
+        @Override
+        public boolean onFailure(Exception e) {
+
+            log.error("consume message failed. message:{},exception:{}", message, e.getMessage(), e);
+
+            // delivered consumeFailedNum times already, the key does not wait for it any longer
+            if (message.getReconsumeTimes() < consumerProperties.getConsumeFailedNum()) {
+                return false;
+            }
+
+            if (!dispatchErrorMessage(message, e)) {
+                log.error("key ordered message dropped after {} deliveries. message:{}", message.getReconsumeTimes() + 1, message);
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * batch message listener implemention, the whole batch is committed or retried
+     */
+    public class DefaultBatchMessageListener implements BatchMessageListener {
+
+        @Override
+        public Action consume(final List<Message> messages, final ConsumeContext context) {
+
+            if (!admit()) {
+                return Action.ReconsumeLater;
+            }
+
+            boolean success = false;
+
+            try {
+
+                if (null == concurrencyLimiter) {
+                    messageListenerMethodHandler.doConsume(messages);
+                } else {
+                    messageListenerMethodHandler.doConsumeLimited(null, messages);
+                }
+
+                success = true;
+
+            } catch (Exception e) {
+
+                log.error("consume batch failed. size:{},exception:{}", messages.size(), e.getMessage(), e);
+
+                if (isLastScheduledAttempt(messages)) {
+                    onRetryExhausted(messages, e);
+                    return Action.CommitMessage;
+                }
+
+                boolean deadLettered = true;
+
+                for (Message message : messages) {
+                    deadLettered &= handleErrorMessage(message, e);
+                }
+
+                // every message dead lettered, reconsuming the batch would record them again
+                if (deadLettered) {
+                    return Action.CommitMessage;
+                }
+
+                return Action.ReconsumeLater;
+
+            } finally {
+                release(success);
+            }
+
+            return Action.CommitMessage;
+        }
+    }
+
     public class MessageListenerMethodHandler {
 
-        public void doConsume(final Message message) throws InvocationTargetException, IllegalAccessException {
+        public void doConsume(final Message message) throws Exception {
+
+            metrics.onReceived(message.getReconsumeTimes());
+
+            boolean success = false;
+
+            try {
+
+                consumeOne(message);
+
+                success = true;
+
+            } finally {
+                metrics.onCompleted(1, success);
+            }
+        }
+
+        public void doConsume(final List<Message> batch) throws Exception {
+
+            for (Message message : batch) {
+                metrics.onReceived(message.getReconsumeTimes());
+            }
+
+            boolean success = false;
 
-            Object obj = messageConverter.fromMessage(message, messageType);
+            try {
+
+                consumeBatch(batch);
+
+                success = true;
+
+            } finally {
+                metrics.onCompleted(batch.size(), success);
+            }
+        }
+
+        private void consumeOne(final Message message) throws Exception {
+
+            if (null != messageFilter && !messageFilter.accept(message)) {
+                log.debug("filter rejected message, skip. msgId:{}, tag:{}", message.getMsgID(), message.getTag());
+                metrics.onFiltered(1);
+                return;
+            }
+
+            if (null != duplicateMessageFilter && !duplicateMessageFilter.tryClaim(message)) {
+                log.info("skip duplicate message. msgId:{}, key:{}", message.getMsgID(), message.getKey());
+                return;
+            }
+
+            boolean consumed = false;
+
+            try {
 
-            if (disableRetry()) {
+                HandlerRoute route = router.route(message);
 
-                if (mqListener != null) {
-                    mqListener.onMessage(obj);
+                if (null == route) {
+                    log.debug("no handler accept message, skip. msgId:{}, tag:{}", message.getMsgID(), message.getTag());
+                    return;
                 }
 
-                if (null != handlerMethod) {
-                    handlerMethod.invoke(instance, obj);
+                Object obj = decode(message, route);
+
+                invoke(route, obj);
+
+                consumed = true;
+
+            } finally {
+                settleClaims(Collections.singletonList(message), consumed);
+            }
+
+        }
+
+        private void consumeBatch(final List<Message> batch) throws Exception {
+
+            List<Message> accepted = null == messageFilter ? batch : skipRejected(batch);
+
+            List<Message> messages = null == duplicateMessageFilter ? accepted : skipDuplicates(accepted);
+
+            if (messages.isEmpty()) {
+                return;
+            }
+
+            boolean consumed = false;
+
+            try {
+
+                consumeRouted(messages);
+
+                consumed = true;
+
+            } finally {
+                settleClaims(messages, consumed);
+            }
+
+        }
+
+        private void consumeRouted(final List<Message> messages) throws Exception {
+
+            if (router.isSingle()) {
+
+                HandlerRoute route = router.route(messages.get(0));
+
+                invoke(route, convert(route, messages));
+
+                return;
+            }
+
+            // split batch by handler, messages keep their order inside each handler
+            Map<HandlerRoute, List<Message>> routedMessages = new LinkedHashMap<>();
+
+            for (Message message : messages) {
+
+                HandlerRoute route = router.route(message);
+
+                if (null == route) {
+                    log.debug("no handler accept message, skip. msgId:{}, tag:{}", message.getMsgID(), message.getTag());
+                    continue;
                 }
 
-            } else {
+                routedMessages.computeIfAbsent(route, key -> new ArrayList<>()).add(message);
+            }
 
-                retryTemplate.execute((RetryCallback) context -> {
+            for (Map.Entry<HandlerRoute, List<Message>> entry : routedMessages.entrySet()) {
+                invoke(entry.getKey(), convert(entry.getKey(), entry.getValue()));
+            }
 
-                    if (mqListener != null) {
-                        mqListener.onMessage(obj);
-                    }
+        }
+
+        /**
+         * consume message or messages once the concurrency limiter frees a slot, feed handler latency back to it
+         */
+        public void doConsumeLimited(final Message message, final List<Message> messages) throws Exception {
+
+            concurrencyLimiter.acquire();
+
+            long startNanos = System.nanoTime();
+            boolean success = false;
+
+            try {
+
+                if (null != message) {
+                    doConsume(message);
+                } else {
+                    doConsume(messages);
+                }
+
+                success = true;
+
+            } finally {
+                concurrencyLimiter.release(System.nanoTime() - startNanos, success);
+            }
+        }
+
+        private List<Message> skipRejected(final List<Message> batch) {
+
+            List<Message> messages = new ArrayList<>(batch.size());
+
+            for (Message message : batch) {
+                if (messageFilter.accept(message)) {
+                    messages.add(message);
+                }
+            }
+
+            if (messages.size() < batch.size()) {
+                log.debug("filter rejected {} of {} messages, skip", batch.size() - messages.size(), batch.size());
+                metrics.onFiltered(batch.size() - messages.size());
+            }
+
+            return messages;
+        }
+
+        private List<Message> skipDuplicates(final List<Message> batch) {
+
+            List<Message> messages = new ArrayList<>(batch.size());
+
+            try {
 
-                    if (null != handlerMethod) {
-                        handlerMethod.invoke(instance, obj);
+                for (Message message : batch) {
+                    if (!duplicateMessageFilter.tryClaim(message)) {
+                        log.info("skip duplicate message. msgId:{}, key:{}", message.getMsgID(), message.getKey());
+                    } else {
+                        messages.add(message);
                     }
+                }
+
+            } catch (IllegalStateException e) {
+                // batch is delivered again, claims taken so far must not make it a duplicate
+                settleClaims(messages, false);
+                throw e;
+            }
 
-                    return null;
-                });
+            return messages;
+        }
+
+        /**
+         * remember claimed messages as consumed, or release them for redelivery when handlers failed
+         */
+        private void settleClaims(final List<Message> messages, final boolean consumed) {
 
+            if (null == duplicateMessageFilter) {
+                return;
             }
 
+            for (Message message : messages) {
+                if (consumed) {
+                    duplicateMessageFilter.markConsumed(message);
+                } else {
+                    duplicateMessageFilter.release(message);
+                }
+            }
+        }
+
+        private List<Object> convert(final HandlerRoute route, final List<Message> messages) {
+
+            List<Object> objs = new ArrayList<>(messages.size());
+
+            for (Message message : messages) {
+                objs.add(decode(message, route));
+            }
+
+            return objs;
+        }
+
+        private Object decode(final Message message, final HandlerRoute route) {
+
+            long startNanos = System.nanoTime();
+
+            Object obj = messageConverter.fromMessage(message, route.getMessageType());
+
+            if (route.isMessageWrapped()) {
+                obj = MessageBuilder.createMessage(obj, new ReceivedMessageHeaders(messageConverter.headersOf(message)));
+            }
+
+            metrics.recordDeserialization(System.nanoTime() - startNanos);
+
+            return obj;
+        }
+
+        private void invoke(final HandlerRoute route, final Object payload) throws Exception {
+
+            HandlerInvoker invoker = route.getInvoker();
+
+            long startNanos = System.nanoTime();
+
+            try {
+
+                if (null != scheduledRetry || disableRetry()) {
+
+                    // scheduled retry is the broker's redelivery, one attempt per delivery
+
+                    invoker.invoke(payload);
+
+                } else {
+
+                    retryTemplate.execute((RetryCallback<Object, Exception>) context -> {
+
+                        if (context.getRetryCount() > 0) {
+                            metrics.onRetry();
+                        }
+
+                        try {
+                            invoker.invoke(payload);
+                        } catch (Exception e) {
+                            // downstream is known to be failing, do not spend the remaining attempts
+                            if (null != circuitBreaker && CircuitBreaker.State.OPEN.equals(circuitBreaker.getState())) {
+                                context.setExhaustedOnly();
+                            }
+                            throw e;
+                        }
+
+                        return null;
+                    });
+
+                }
+
+            } finally {
+                metrics.recordHandler(System.nanoTime() - startNanos);
+            }
 
         }
 
@@ -363,23 +1144,52 @@ public class MqListenerContainer {
 
     }
 
-    private void handleErrorMessage(Message message, Throwable t) {
+    /**
+     * whether failed delivery was the last attempt of scheduled retry, a batch when all of its messages were
+     */
+    private boolean isLastScheduledAttempt(List<Message> messages) {
 
-        if (message.getReconsumeTimes() >= consumerProperties.getConsumeFailedNum()) {
+        if (null == scheduledRetry) {
+            return false;
+        }
 
-            CompletableFuture.supplyAsync(() -> {
+        for (Message message : messages) {
+            if (message.getReconsumeTimes() + 1 < scheduledRetry.getMaxAttempts()) {
+                return false;
+            }
+        }
 
-                for (ErrorMessageHandlerStrategy errorMessageHandlerStrategy : errorMessageHandlerStrategies) {
-                    errorMessageHandlerStrategy.handleErrorMessage(message, t);
-                }
+        return true;
+    }
+
+    /**
+     * last attempt of scheduled retry failed, messages are committed after this so they will not be redelivered
+     */
+    private void onRetryExhausted(List<Message> messages, Throwable t) {
 
-                return null;
+        for (Message message : messages) {
 
-            });
+            log.error("consume message failed after all retries. message:{},exception:{}", message, t.getMessage(), t);
 
+            dispatchErrorMessage(message, t);
         }
     }
 
+    /**
+     * @return true if message is dead lettered, it is committed then. scheduled retry dead letters on its last attempt
+     * only, see {@link #onRetryExhausted(List, Throwable)}
+     */
+    private boolean handleErrorMessage(Message message, Throwable t) {
+        return null == scheduledRetry && message.getReconsumeTimes() >= consumerProperties.getConsumeFailedNum() && dispatchErrorMessage(message, t);
+    }
+
+    /**
+     * @return true if an error message handler keeps message, see {@link ErrorMessagePipeline#submit(FailedMessage)}
+     */
+    private boolean dispatchErrorMessage(Message message, Throwable t) {
+        return null != errorMessagePipeline && errorMessagePipeline.submit(new FailedMessage(message, t, consumerProperties.getConsumerGroup()));
+    }
+
     /**
      * whether disable additional retry
      *
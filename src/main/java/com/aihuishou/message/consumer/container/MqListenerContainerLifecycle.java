@@ -0,0 +1,227 @@
+package com.aihuishou.message.consumer.container;
+
+import com.aihuishou.message.properties.ConsumerContainerProperties;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeansException;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * start and stop all listener containers in parallel within one lifecycle phase
+ * <note>
+ * containers start on a bounded executor once the context is refreshed, or when the application is ready if
+ * configured so, a startup time report is logged per container. one failed or timed out container fails the
+ * startup, containers started by then are stopped first, those still starting are stopped once they are started.
+ * </note>
+ *
+ * @author js.xie
+ * @see ConsumerContainerProperties.Lifecycle
+ */
+@Slf4j
+public class MqListenerContainerLifecycle implements SmartLifecycle, ApplicationListener<ApplicationReadyEvent>, ApplicationContextAware {
+
+    private final ConsumerContainerProperties.Lifecycle properties;
+
+    private ApplicationContext applicationContext;
+
+    private volatile boolean running;
+
+    public MqListenerContainerLifecycle(ConsumerContainerProperties.Lifecycle properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public void start() {
+
+        running = true;
+
+        if (properties.isStartOnApplicationReady()) {
+            log.info("listener containers will start when application is ready");
+            return;
+        }
+
+        startContainers();
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+
+        if (running && properties.isStartOnApplicationReady() && event.getApplicationContext() == applicationContext) {
+            startContainers();
+        }
+    }
+
+    @Override
+    public void stop() {
+
+        running = false;
+
+        runInParallel("stop", MqListenerContainerLifecycle::stopStarted, null);
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        try {
+            stop();
+        } finally {
+            callback.run();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return true;
+    }
+
+    @Override
+    public int getPhase() {
+        return properties.getPhase();
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        this.applicationContext = applicationContext;
+    }
+
+    private void startContainers() {
+
+        List<ContainerTiming> timings = runInParallel("start", container -> {
+            if (!container.isStarted()) {
+                container.start();
+            }
+        }, MqListenerContainerLifecycle::stopStarted);
+
+        timings.sort(Comparator.comparingLong(ContainerTiming::getMillis).reversed());
+
+        StringBuilder report = new StringBuilder();
+        for (ContainerTiming timing : timings) {
+            report.append(String.format("%n  %6d ms  %s  %s", timing.getMillis(), timing.getBeanName(), timing.getDescription()));
+        }
+        log.info("started {} listener containers:{}", timings.size(), report);
+    }
+
+    /**
+     * @param undo applied to every container once its action is done when the action of any container fails or
+     *             times out, null to leave them as they are
+     */
+    private List<ContainerTiming> runInParallel(String action, ContainerAction containerAction, ContainerAction undo) {
+
+        Map<String, MqListenerContainer> containers = applicationContext.getBeansOfType(MqListenerContainer.class);
+
+        List<ContainerTiming> timings = new ArrayList<>(containers.size());
+
+        if (containers.isEmpty()) {
+            return timings;
+        }
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("mq-container-" + action + "-");
+        threadFactory.setDaemon(true);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(properties.getStartupThreads(), containers.size())), threadFactory);
+
+        List<MqListenerContainer> submitted = new ArrayList<>(containers.size());
+        List<CompletableFuture<ContainerTiming>> futures = new ArrayList<>(containers.size());
+
+        try {
+
+            containers.forEach((beanName, container) -> {
+
+                submitted.add(container);
+
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    long startNanos = System.nanoTime();
+                    containerAction.apply(container);
+                    return new ContainerTiming(beanName, container.getConsumerProperties().getTopic() + "/" + container.getConsumerProperties().getConsumerGroup(),
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+                }, executor));
+            });
+
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(properties.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+
+            for (CompletableFuture<ContainerTiming> future : futures) {
+                timings.add(future.join());
+            }
+
+            return timings;
+
+        } catch (ExecutionException e) {
+            log.error("{} listener containers failed.", action, e.getCause());
+            undo(action, submitted, futures, undo);
+            throw new IllegalStateException(action + " listener containers failed", e.getCause());
+        } catch (TimeoutException e) {
+            undo(action, submitted, futures, undo);
+            throw new IllegalStateException(action + " listener containers timed out after " + properties.getTimeoutMillis() + " ms", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            undo(action, submitted, futures, undo);
+            throw new IllegalStateException(action + " listener containers interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * undo action of containers done now on calling thread, of those still running once they are done
+     */
+    private static void undo(String action, List<MqListenerContainer> containers, List<CompletableFuture<ContainerTiming>> futures, ContainerAction undo) {
+
+        if (null == undo) {
+            return;
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+
+            MqListenerContainer container = containers.get(i);
+
+            futures.get(i).whenComplete((timing, throwable) -> {
+                try {
+                    undo.apply(container);
+                } catch (RuntimeException e) {
+                    log.warn("undo {} of listener container failed. {}", action, container, e);
+                }
+            });
+        }
+    }
+
+    private static void stopStarted(MqListenerContainer container) {
+        if (container.isStarted()) {
+            container.stop();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ContainerAction {
+
+        void apply(MqListenerContainer container);
+    }
+
+    @Value
+    private static class ContainerTiming {
+
+        String beanName;
+
+        String description;
+
+        long millis;
+    }
+}
@@ -0,0 +1,59 @@
+package com.aihuishou.message.consumer.container;
+
+/**
+ * instrumentation of one listener container, created once when container start and called on every message
+ * <note>
+ *     implementations must not allocate per call
+ * </note>
+ *
+ * @author js.xie
+ * @see MqListenerContainerMetricsFactory
+ */
+public interface MqListenerContainerMetrics {
+
+    MqListenerContainerMetrics NOOP = new MqListenerContainerMetrics() {
+    };
+
+    /**
+     * messages entered consumer handler pipeline
+     *
+     * @param reconsumeTimes reconsume times of the message
+     */
+    default void onReceived(int reconsumeTimes) {
+
+    }
+
+    /**
+     * messages left consumer handler pipeline
+     *
+     * @param count   number of messages
+     * @param success whether they were consumed
+     */
+    default void onCompleted(int count, boolean success) {
+
+    }
+
+    /**
+     * messages acknowledged without decoding because filter expression rejected them
+     *
+     * @param count number of messages
+     */
+    default void onFiltered(int count) {
+
+    }
+
+    /**
+     * one additional retry attempt
+     */
+    default void onRetry() {
+
+    }
+
+    default void recordDeserialization(long nanos) {
+
+    }
+
+    default void recordHandler(long nanos) {
+
+    }
+}
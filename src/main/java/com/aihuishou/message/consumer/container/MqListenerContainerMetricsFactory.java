@@ -0,0 +1,18 @@
+package com.aihuishou.message.consumer.container;
+
+import com.aihuishou.message.properties.ConsumerProperties;
+
+/**
+ * create metrics of one listener container when it starts
+ *
+ * @author js.xie
+ */
+@FunctionalInterface
+public interface MqListenerContainerMetricsFactory {
+
+    /**
+     * @param consumerProperties properties of the container
+     * @return metrics, {@link MqListenerContainerMetrics#NOOP} when not instrumented
+     */
+    MqListenerContainerMetrics create(ConsumerProperties consumerProperties);
+}
@@ -1,18 +1,31 @@
 package com.aihuishou.message.consumer.container;
 
+import com.aihuishou.message.annotation.ConsumerCircuitBreaker;
+import com.aihuishou.message.annotation.ConsumerConcurrency;
+import com.aihuishou.message.annotation.ConsumerDedup;
 import com.aihuishou.message.annotation.ConsumerRetry;
 import com.aihuishou.message.annotation.MessageListener;
+import com.aihuishou.message.annotation.MessageListenerHandlerMethod;
+import com.aihuishou.message.constants.ConsumeMode;
+import com.aihuishou.message.constants.RetryMode;
+import com.aihuishou.message.constants.SelectorType;
+import com.aihuishou.message.consumer.MqBatchListener;
 import com.aihuishou.message.consumer.MqListener;
 import com.aihuishou.message.properties.ConsumerProperties;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.core.env.Environment;
 import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
 
 import java.lang.reflect.Method;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static com.aihuishou.message.constants.MqListenerContainerConstants.*;
@@ -30,7 +43,6 @@ public abstract class MqListenerContainerRegistrar {
 
     public static void registryFromInterface(String beanName, Object bean, Class<?> originTargetClass, Environment environment, ConfigurableApplicationContext applicationContext) {
 
-        MqListener mqListener = (MqListener) bean;
         MessageListener annotation = originTargetClass.getAnnotation(MessageListener.class);
 
         // handler consumer properties
@@ -43,11 +55,27 @@ public abstract class MqListenerContainerRegistrar {
         consumerProperties.setSelectorExpress(environment.resolvePlaceholders(annotation.selectorExpress()));
         consumerProperties.setSelectorType(annotation.selectorType());
         consumerProperties.setConsumeFailedNum(annotation.consumeFailedNum());
+        consumerProperties.setConsumeBatchMaxSize(annotation.consumeBatchMaxSize());
+        consumerProperties.setBatchMaxAwaitSeconds(annotation.batchMaxAwaitSeconds());
+        consumerProperties.setOrderKeyProperty(environment.resolvePlaceholders(annotation.orderKeyProperty()));
+        consumerProperties.setFilterExpression(environment.resolvePlaceholders(annotation.filterExpression()));
 
 
         BeanDefinitionBuilder beanBuilder = BeanDefinitionBuilder.rootBeanDefinition(MqListenerContainer.class);
         beanBuilder.addPropertyValue(PROP_CONSUMER, consumerProperties);
-        beanBuilder.addPropertyValue(PROP_MQ_LISTENER, mqListener);
+
+        // batch listener only consume in batch mode
+        if (bean instanceof MqBatchListener) {
+            if (!ConsumeMode.BATCH.equals(consumerProperties.getConsumeMode())) {
+                throw new IllegalStateException("originTargetClass:" + originTargetClass + " implements MqBatchListener, consumeMode must be BATCH but is " + consumerProperties.getConsumeMode());
+            }
+            beanBuilder.addPropertyValue(PROP_MQ_BATCH_LISTENER, bean);
+        } else {
+            if (ConsumeMode.BATCH.equals(consumerProperties.getConsumeMode())) {
+                throw new IllegalStateException("originTargetClass:" + originTargetClass + " must implement MqBatchListener when consumeMode is BATCH");
+            }
+            beanBuilder.addPropertyValue(PROP_MQ_LISTENER, bean);
+        }
         String containerBeanName = String.format("%s_%s", ClassUtils.getShortName(MqListenerContainer.class), counter.incrementAndGet());
         DefaultListableBeanFactory beanFactory = (DefaultListableBeanFactory) applicationContext.getBeanFactory();
         beanFactory.registerBeanDefinition(containerBeanName, beanBuilder.getBeanDefinition());
@@ -58,19 +86,15 @@ public abstract class MqListenerContainerRegistrar {
 
         // enable retry template
         if (enableRetry) {
-            ConsumerRetry consumerRetry = annotation.retry();
-            ConsumerProperties.Retry retry = new ConsumerProperties.Retry();
-            retry.setMaxAttempts(consumerRetry.maxAttempts());
-            retry.setBackOffInitialInterval(consumerRetry.backOffInitialInterval());
-            retry.setBackOffMaxInterval(consumerRetry.backOffMaxInterval());
-            retry.setBackOffMultiplier(consumerRetry.backOffMultiplier());
-            consumerProperties.setRetry(retry);
+            consumerProperties.setRetry(buildRetry(annotation.retry(), originTargetClass));
 
             container.buildRetryTemplate(consumerProperties.getRetry());
         }
 
 
-        startContainerIfNecessary(container);
+        buildDedup(annotation, consumerProperties, environment);
+        buildConcurrency(annotation, consumerProperties);
+        buildCircuitBreaker(annotation, consumerProperties);
 
         log.info("register rocketMQ listener to container, listenerBeanName:{}, containerBeanName:{}", beanName, containerBeanName);
 
@@ -92,16 +116,21 @@ public abstract class MqListenerContainerRegistrar {
         consumerProperties.setSelectorExpress(environment.resolvePlaceholders(annotation.selectorExpress()));
         consumerProperties.setSelectorType(annotation.selectorType());
         consumerProperties.setConsumeFailedNum(annotation.consumeFailedNum());
+        consumerProperties.setConsumeBatchMaxSize(annotation.consumeBatchMaxSize());
+        consumerProperties.setBatchMaxAwaitSeconds(annotation.batchMaxAwaitSeconds());
+        consumerProperties.setOrderKeyProperty(environment.resolvePlaceholders(annotation.orderKeyProperty()));
+        consumerProperties.setFilterExpression(environment.resolvePlaceholders(annotation.filterExpression()));
 
         // todo bean 不能是代理对象
         beanBuilder.addPropertyValue(PROP_CONSUME_INSTANCE, bean);
         beanBuilder.addPropertyValue(PROP_CONSUMER, consumerProperties);
 
-        Method handlerMethod = listenerHandlerMethods.get(0);
-        beanBuilder.addPropertyValue(PROP_CONSUME_HANDLER_METHOD, handlerMethod);
+        beanBuilder.addPropertyValue(PROP_CONSUME_HANDLER_METHODS, listenerHandlerMethods);
 
-        // todo
-        beanBuilder.addPropertyValue(PROP_CONSUMER_METHOD_PARAMETER_TYPE, handlerMethod.getParameterTypes()[0]);
+        // one subscription for all handler methods, narrow it to their tags when every method declares one
+        if (SelectorType.TAG.equals(consumerProperties.getSelectorType()) && HandlerRoute.ANY_TAG.equals(consumerProperties.getSelectorExpress().trim())) {
+            consumerProperties.setSelectorExpress(subscriptionTags(listenerHandlerMethods));
+        }
 
         String containerBeanName = String.format("%s_%s", ClassUtils.getShortName(MqListenerContainer.class), counter.incrementAndGet());
         DefaultListableBeanFactory beanFactory = (DefaultListableBeanFactory) applicationContext.getBeanFactory();
@@ -112,32 +141,100 @@ public abstract class MqListenerContainerRegistrar {
         boolean enableRetry = annotation.enableRetry();
         // enable retry template
         if (enableRetry) {
-            ConsumerRetry consumerRetry = annotation.retry();
-            ConsumerProperties.Retry retry = new ConsumerProperties.Retry();
-            retry.setMaxAttempts(consumerRetry.maxAttempts());
-            retry.setBackOffInitialInterval(consumerRetry.backOffInitialInterval());
-            retry.setBackOffMaxInterval(consumerRetry.backOffMaxInterval());
-            retry.setBackOffMultiplier(consumerRetry.backOffMultiplier());
-            consumerProperties.setRetry(retry);
+            consumerProperties.setRetry(buildRetry(annotation.retry(), originTargetClass));
             container.buildRetryTemplate(consumerProperties.getRetry());
         }
 
-        startContainerIfNecessary(container);
+        buildDedup(annotation, consumerProperties, environment);
+        buildConcurrency(annotation, consumerProperties);
+        buildCircuitBreaker(annotation, consumerProperties);
 
         log.info("register rocketMQ listener to container, listenerBeanName:{}, containerBeanName:{}", beanName, containerBeanName);
     }
 
-    private static void startContainerIfNecessary(MqListenerContainer container) {
+    static ConsumerProperties.Retry buildRetry(ConsumerRetry consumerRetry, Class<?> originTargetClass) {
+
+        // scheduled retry is redelivered on the broker's schedule, a back off would silently be ignored
+        if (RetryMode.SCHEDULED.equals(consumerRetry.mode()) && isBackOffConfigured(consumerRetry)) {
+            throw new IllegalStateException("originTargetClass:" + originTargetClass + " configures back off, it is not supported when retry mode is SCHEDULED");
+        }
+
+        ConsumerProperties.Retry retry = new ConsumerProperties.Retry();
+        retry.setMaxAttempts(consumerRetry.maxAttempts());
+        retry.setBackOffInitialInterval(consumerRetry.backOffInitialInterval());
+        retry.setBackOffMaxInterval(consumerRetry.backOffMaxInterval());
+        retry.setBackOffMultiplier(consumerRetry.backOffMultiplier());
+        retry.setMode(consumerRetry.mode());
+
+        return retry;
+    }
+
+    private static boolean isBackOffConfigured(ConsumerRetry consumerRetry) {
+        return !Objects.equals(consumerRetry.backOffInitialInterval(), AnnotationUtils.getDefaultValue(consumerRetry, "backOffInitialInterval"))
+                || !Objects.equals(consumerRetry.backOffMaxInterval(), AnnotationUtils.getDefaultValue(consumerRetry, "backOffMaxInterval"))
+                || !Objects.equals(consumerRetry.backOffMultiplier(), AnnotationUtils.getDefaultValue(consumerRetry, "backOffMultiplier"));
+    }
+
+    private static void buildDedup(MessageListener annotation, ConsumerProperties consumerProperties, Environment environment) {
+
+        // enable duplicate delivery filter
+        if (annotation.enableDedup()) {
+            ConsumerDedup consumerDedup = annotation.dedup();
+            ConsumerProperties.Dedup dedup = new ConsumerProperties.Dedup();
+            dedup.setKey(consumerDedup.key());
+            dedup.setCapacity(consumerDedup.capacity());
+            dedup.setTtlSeconds(consumerDedup.ttlSeconds());
+            dedup.setJournalDir(environment.resolvePlaceholders(consumerDedup.journalDir()));
+            consumerProperties.setDedup(dedup);
+        }
+    }
 
-        if (!container.isStarted()) {
-            try {
-                container.start();
-            } catch (Exception e) {
-                log.error("started container failed. {}", container, e);
-                throw new RuntimeException(e);
+    private static void buildConcurrency(MessageListener annotation, ConsumerProperties consumerProperties) {
+
+        // enable adaptive concurrency
+        if (annotation.enableAdaptiveConcurrency()) {
+            ConsumerConcurrency consumerConcurrency = annotation.concurrency();
+            ConsumerProperties.Concurrency concurrency = new ConsumerProperties.Concurrency();
+            concurrency.setMinConcurrency(consumerConcurrency.minConcurrency());
+            concurrency.setMaxConcurrency(consumerConcurrency.maxConcurrency());
+            concurrency.setAdjustIntervalMillis(consumerConcurrency.adjustIntervalMillis());
+            concurrency.setLatencyTolerance(consumerConcurrency.latencyTolerance());
+            consumerProperties.setConcurrency(concurrency);
+        }
+    }
+
+    private static void buildCircuitBreaker(MessageListener annotation, ConsumerProperties consumerProperties) {
+
+        // enable circuit breaker
+        if (annotation.enableCircuitBreaker()) {
+            ConsumerCircuitBreaker consumerCircuitBreaker = annotation.circuitBreaker();
+            ConsumerProperties.CircuitBreaker circuitBreaker = new ConsumerProperties.CircuitBreaker();
+            circuitBreaker.setWindowSize(consumerCircuitBreaker.windowSize());
+            circuitBreaker.setMinimumCalls(consumerCircuitBreaker.minimumCalls());
+            circuitBreaker.setFailureRateThreshold(consumerCircuitBreaker.failureRateThreshold());
+            circuitBreaker.setOpenMillis(consumerCircuitBreaker.openMillis());
+            circuitBreaker.setHalfOpenProbes(consumerCircuitBreaker.halfOpenProbes());
+            consumerProperties.setCircuitBreaker(circuitBreaker);
+        }
+    }
+
+    private static String subscriptionTags(List<Method> listenerHandlerMethods) {
+
+        Set<String> tags = new LinkedHashSet<>();
+
+        for (Method method : listenerHandlerMethods) {
+
+            String tag = AnnotationUtils.findAnnotation(method, MessageListenerHandlerMethod.class).tag().trim();
+
+            // blank tag routes any tag, same as `*`
+            if (!StringUtils.hasText(tag) || HandlerRoute.ANY_TAG.equals(tag)) {
+                return HandlerRoute.ANY_TAG;
             }
+
+            tags.add(tag);
         }
 
+        return tags.isEmpty() ? HandlerRoute.ANY_TAG : String.join(" || ", tags);
     }
 
 }
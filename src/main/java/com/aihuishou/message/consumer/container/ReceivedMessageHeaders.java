@@ -0,0 +1,17 @@
+package com.aihuishou.message.consumer.container;
+
+import org.springframework.messaging.MessageHeaders;
+
+import java.util.Map;
+
+/**
+ * headers of one received message, no random id or timestamp is generated for it
+ *
+ * @author js.xie
+ */
+class ReceivedMessageHeaders extends MessageHeaders {
+
+    ReceivedMessageHeaders(Map<String, Object> headers) {
+        super(headers, ID_VALUE_NONE, -1L);
+    }
+}
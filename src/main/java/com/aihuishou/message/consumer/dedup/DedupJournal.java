@@ -0,0 +1,105 @@
+package com.aihuishou.message.consumer.dedup;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * memory mapped ring of consumed message records, replayed into {@link DuplicateMessageFilter} on restart
+ * <note>
+ * layout: 8 bytes next write index, then fixed 16 bytes records of (hash, expireAt). the oldest record is
+ * overwritten when the ring is full. pages are flushed by the operating system, records written right before a
+ * machine crash may be lost.
+ * </note>
+ *
+ * @author js.xie
+ */
+public class DedupJournal {
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final int RECORD_SIZE = 16;
+
+    private final Path path;
+
+    private final int capacity;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    private long nextIndex;
+
+    public DedupJournal(Path path, int capacity) throws IOException {
+
+        this.path = path;
+        this.capacity = capacity;
+
+        if (null != path.getParent()) {
+            Files.createDirectories(path.getParent());
+        }
+
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+
+        // a journal written with another capacity cannot be read as a ring, start over
+        if (channel.size() != size) {
+            channel.truncate(0);
+        }
+
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        this.nextIndex = buffer.getLong(0);
+    }
+
+    /**
+     * feed every record to consumer
+     *
+     * @return number of records
+     */
+    public synchronized int replay(RecordConsumer consumer) {
+
+        long count = Math.min(nextIndex, capacity);
+
+        for (int i = 0; i < count; i++) {
+            int position = HEADER_SIZE + i * RECORD_SIZE;
+            consumer.accept(buffer.getLong(position), buffer.getLong(position + 8));
+        }
+
+        return (int) count;
+    }
+
+    public synchronized void append(long hash, long expireAt) {
+
+        int position = HEADER_SIZE + (int) (nextIndex % capacity) * RECORD_SIZE;
+
+        buffer.putLong(position, hash);
+        buffer.putLong(position + 8, expireAt);
+
+        nextIndex++;
+        buffer.putLong(0, nextIndex);
+    }
+
+    public synchronized void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            // journal is best effort
+        }
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+
+    @FunctionalInterface
+    public interface RecordConsumer {
+
+        void accept(long hash, long expireAt);
+    }
+}
@@ -0,0 +1,275 @@
+package com.aihuishou.message.consumer.dedup;
+
+import com.aihuishou.message.constants.DedupKey;
+import com.aihuishou.message.properties.ConsumerProperties;
+import com.aliyun.openservices.ons.api.Message;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * remember consumed messages so that duplicate deliveries can be committed before conversion
+ * <note>
+ * messages are kept as 64 bit hashes of their id in a fixed size open addressing table, so lookup and insert do
+ * not allocate. table is split into segments guarded by their own lock. a delivery claims its message before
+ * handlers run, so that a duplicate delivered meanwhile is skipped, and releases the claim when handlers fail. when
+ * all slots of a probe window are live, the settled one expiring first is evicted. a running claim is never evicted,
+ * a claim finding its window full of them fails, so its delivery is retried later.
+ * </note>
+ *
+ * @author js.xie
+ */
+@Slf4j
+public class DuplicateMessageFilter {
+
+    private static final int SEGMENTS = 16;
+
+    private static final int PROBES = 8;
+
+    private static final long EMPTY = 0L;
+
+    private final DedupKey dedupKey;
+
+    private final long ttlMillis;
+
+    private final Segment[] segments;
+
+    /**
+     * null when memory only
+     */
+    private final DedupJournal journal;
+
+    public DuplicateMessageFilter(DedupKey dedupKey, int capacity, long ttlMillis, DedupJournal journal) {
+
+        this.dedupKey = dedupKey;
+        this.ttlMillis = ttlMillis;
+        this.journal = journal;
+
+        // keep load factor under 0.5
+        int segmentSlots = Integer.highestOneBit(Math.max(PROBES, capacity * 2 / SEGMENTS - 1) << 1);
+
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSlots);
+        }
+
+        if (null != journal) {
+            long now = System.currentTimeMillis();
+            int restored = journal.replay((hash, expireAt) -> {
+                if (expireAt > now) {
+                    segmentOf(hash).put(hash, expireAt, now);
+                }
+            });
+            log.info("restored {} consumed messages from dedup journal {}", restored, journal);
+        }
+    }
+
+    public static DuplicateMessageFilter create(String consumerGroup, ConsumerProperties.Dedup dedup) {
+
+        long ttlMillis = TimeUnit.SECONDS.toMillis(dedup.getTtlSeconds());
+
+        DedupJournal journal = null;
+
+        if (null != dedup.getJournalDir() && !dedup.getJournalDir().trim().isEmpty()) {
+            try {
+                journal = new DedupJournal(Paths.get(dedup.getJournalDir(), consumerGroup + ".dedup"), dedup.getCapacity());
+            } catch (IOException e) {
+                throw new IllegalStateException("cannot open dedup journal in " + dedup.getJournalDir(), e);
+            }
+        }
+
+        return new DuplicateMessageFilter(dedup.getKey(), dedup.getCapacity(), ttlMillis, journal);
+    }
+
+    /**
+     * claim message for current delivery, atomic against deliveries on other threads
+     *
+     * @return false if message has been consumed or is claimed by another delivery
+     * @throws IllegalStateException if probe window of message is full of running claims, delivery should fail
+     */
+    public boolean tryClaim(Message message) {
+
+        long hash = hashOf(message);
+
+        if (hash == EMPTY) {
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+
+        return segmentOf(hash).claim(hash, now + ttlMillis, now);
+    }
+
+    /**
+     * give up the claim of a delivery whose handlers failed, message can be claimed again by its redelivery
+     */
+    public void release(Message message) {
+
+        long hash = hashOf(message);
+
+        if (hash != EMPTY) {
+            segmentOf(hash).remove(hash);
+        }
+    }
+
+    /**
+     * remember claimed message as consumed
+     */
+    public void markConsumed(Message message) {
+
+        long hash = hashOf(message);
+
+        if (hash == EMPTY) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long expireAt = now + ttlMillis;
+
+        if (!segmentOf(hash).put(hash, expireAt, now)) {
+            log.warn("dedup table is full of running deliveries, consumed message is not remembered. msgId:{}", message.getMsgID());
+            return;
+        }
+
+        if (null != journal) {
+            journal.append(hash, expireAt);
+        }
+    }
+
+    public void close() {
+        if (null != journal) {
+            journal.close();
+        }
+    }
+
+    private Segment segmentOf(long hash) {
+        return segments[(int) (hash >>> 60) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * 64 bit FNV-1a of id chars, {@link #EMPTY} when message has no id
+     */
+    long hashOf(Message message) {
+
+        String id = DedupKey.KEY.equals(dedupKey) ? message.getKey() : message.getMsgID();
+
+        if (null == id || id.isEmpty()) {
+            return EMPTY;
+        }
+
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash == EMPTY ? 1L : hash;
+    }
+
+    private static final class Segment {
+
+        private final long[] hashes;
+
+        private final long[] expireAts;
+
+        /**
+         * whether slot holds the claim of a delivery still running
+         */
+        private final boolean[] claims;
+
+        private final int mask;
+
+        Segment(int slots) {
+            this.hashes = new long[slots];
+            this.expireAts = new long[slots];
+            this.claims = new boolean[slots];
+            this.mask = slots - 1;
+        }
+
+        synchronized boolean claim(long hash, long expireAt, long now) {
+
+            int index = (int) hash & mask;
+
+            for (int i = 0; i < PROBES; i++) {
+                int slot = (index + i) & mask;
+                if (hashes[slot] == hash && expireAts[slot] > now) {
+                    return false;
+                }
+            }
+
+            int slot = freeSlot(hash, now);
+
+            if (slot < 0) {
+                throw new IllegalStateException("dedup table is full of running deliveries, raise dedup capacity");
+            }
+
+            hashes[slot] = hash;
+            expireAts[slot] = expireAt;
+            claims[slot] = true;
+
+            return true;
+        }
+
+        synchronized void remove(long hash) {
+
+            int index = (int) hash & mask;
+
+            for (int i = 0; i < PROBES; i++) {
+                int slot = (index + i) & mask;
+                if (hashes[slot] == hash) {
+                    hashes[slot] = EMPTY;
+                    expireAts[slot] = 0L;
+                    claims[slot] = false;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return false if every slot of probe window holds a running claim, message is not remembered then
+         */
+        synchronized boolean put(long hash, long expireAt, long now) {
+
+            int slot = freeSlot(hash, now);
+
+            if (slot < 0) {
+                return false;
+            }
+
+            hashes[slot] = hash;
+            expireAts[slot] = expireAt;
+            claims[slot] = false;
+
+            return true;
+        }
+
+        /**
+         * slot of same hash, an empty or expired slot, else the settled slot expiring first,
+         * a running claim is never evicted
+         *
+         * @return -1 if there is none
+         */
+        private int freeSlot(long hash, long now) {
+
+            int index = (int) hash & mask;
+            int victim = -1;
+
+            for (int i = 0; i < PROBES; i++) {
+
+                int slot = (index + i) & mask;
+
+                if (hashes[slot] == hash || hashes[slot] == EMPTY || expireAts[slot] <= now) {
+                    return slot;
+                }
+
+                if (!claims[slot] && (victim < 0 || expireAts[slot] < expireAts[victim])) {
+                    victim = slot;
+                }
+            }
+
+            return victim;
+        }
+    }
+}
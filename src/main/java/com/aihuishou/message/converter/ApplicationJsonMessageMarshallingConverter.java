@@ -4,61 +4,270 @@ import com.aliyun.openservices.ons.api.Message;
 import com.aliyun.openservices.shade.com.alibaba.rocketmq.common.message.MessageConst;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.MessageHeaders;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.util.StringUtils;
 
+import java.io.IOException;
+import java.lang.reflect.Type;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * converter negotiates body format by content type, json unless told otherwise
+ * <note>
+ * producer: codec is chosen by `contentType` header and stamped into {@link MessageCodec#CONTENT_TYPE_PROPERTY}
+ * consumer: codec is chosen by {@link MessageCodec#CONTENT_TYPE_PROPERTY} per message, json when absent
+ * bodies not smaller than compressionThreshold are compressed when a compressor is set, consumer undoes it by
+ * {@link MessageCompressor#CONTENT_ENCODING_PROPERTY}
+ * payload objects are serialized once by the codec. byte[] payloads are base64 json strings like earlier versions,
+ * they are sent and received as raw bytes only with content type {@link OctetStreamMessageCodec application/octet-stream}
+ * </note>
+ *
  * @author js.xie
  */
 @Slf4j
 public class ApplicationJsonMessageMarshallingConverter implements MessageConverter {
 
-    private String charset = "utf-8";
+    private static final int MAX_WARNED_CONTENT_TYPES = 64;
+
+    private Charset charset = StandardCharsets.UTF_8;
 
-    @Setter
     private ObjectMapper objectMapper;
 
+    private JsonMessageCodec jsonCodec;
+
+    /**
+     * codecs by content type, json and octet stream codecs are always present
+     */
+    private final Map<String, MessageCodec> codecs = new ConcurrentHashMap<>();
+
+    /**
+     * compressors by name, jdk gzip and deflate are always present
+     */
+    private final Map<String, MessageCompressor> compressors = new ConcurrentHashMap<>();
+
+    /**
+     * compressor of sent bodies, null means no compression
+     */
+    private MessageCompressor compressor;
+
+    private int compressionThreshold = 16 * 1024;
+
+    /**
+     * max bytes a received body is decompressed to
+     */
+    private int maxDecompressedBytes = 64 * 1024 * 1024;
+
+    private CompressionMetrics compressionMetrics = CompressionMetrics.NOOP;
+
+    private MessageHeaderCodec headerCodec = MessageHeaderCodec.DEFAULT;
+
+    /**
+     * content types without codec, warned once
+     */
+    private final Set<String> unknownContentTypes = ConcurrentHashMap.newKeySet();
+
+    public ApplicationJsonMessageMarshallingConverter() {
+        setCompressors(Arrays.asList(new GzipMessageCompressor(), new DeflateMessageCompressor()));
+        setCodecs(Collections.singletonList(new OctetStreamMessageCodec()));
+    }
+
     public void setCharset(String charset) {
-        this.charset = charset;
+        this.charset = Charset.forName(charset);
+        this.rebuildJsonCodec();
+    }
+
+    public void setObjectMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.rebuildJsonCodec();
+    }
+
+    /**
+     * register additional codecs, a codec of `application/json` replaces the built in one
+     */
+    public void setCodecs(List<MessageCodec> codecs) {
+
+        for (MessageCodec codec : codecs) {
+            this.codecs.put(codec.getContentType(), codec);
+        }
+    }
+
+    /**
+     * register additional compressors, consumer side needs every compressor producers may use
+     */
+    public void setCompressors(List<MessageCompressor> compressors) {
+
+        for (MessageCompressor messageCompressor : compressors) {
+            this.compressors.put(messageCompressor.getName(), messageCompressor);
+        }
+    }
+
+    /**
+     * compress sent bodies with the registered compressor of name
+     *
+     * @param name      compressor name, eg gzip
+     * @param threshold min body bytes compressed
+     */
+    public void setCompression(String name, int threshold) {
+
+        MessageCompressor messageCompressor = compressors.get(name);
+
+        if (null == messageCompressor) {
+            throw new IllegalArgumentException("no compressor named:" + name + ", registered:" + compressors.keySet());
+        }
+
+        this.compressor = messageCompressor;
+        this.compressionThreshold = threshold;
+    }
+
+    public void setMaxDecompressedBytes(int maxDecompressedBytes) {
+        this.maxDecompressedBytes = maxDecompressedBytes;
+    }
+
+    public void setCompressionMetrics(CompressionMetrics compressionMetrics) {
+        this.compressionMetrics = compressionMetrics;
+    }
+
+    public void setHeaderCodec(MessageHeaderCodec headerCodec) {
+        this.headerCodec = headerCodec;
+    }
+
+    @Override
+    public Map<String, Object> headersOf(Message message) {
+        return headerCodec.decode(message);
+    }
+
+    private void rebuildJsonCodec() {
+
+        if (null == objectMapper) {
+            return;
+        }
+
+        this.jsonCodec = new JsonMessageCodec(objectMapper, charset);
+        this.codecs.put(jsonCodec.getContentType(), jsonCodec);
     }
 
     @Override
     public Object fromMessage(Message message, Class<?> targetClass) {
+        return fromMessage(message, (Type) targetClass);
+    }
+
+    /**
+     * parse straight from message body, generic types eg `List<Foo>` are supported
+     */
+    @Override
+    public Object fromMessage(Message message, Type targetType) {
 
-        if (Objects.equals(targetClass, Message.class)) {
+        if (Objects.equals(targetType, Message.class)) {
 
             return message;
 
-        } else {
+        }
+
+        byte[] body;
+
+        try {
+
+            body = decompress(message);
 
-            String str = new String(message.getBody(), Charset.forName(charset));
+        } catch (Exception e) {
 
-            log.info("receive msg :{}", str);
+            log.info("decompress failed. msgId:{}", message.getMsgID());
+            throw new RuntimeException("cannot decompress message body, exception:" + e.getMessage(), e);
 
-            if (Objects.equals(targetClass, String.class)) {
+        }
+
+        String contentType = message.getUserProperties(MessageCodec.CONTENT_TYPE_PROPERTY);
+
+        if (log.isDebugEnabled()) {
+            log.debug("receive msg id:{}, contentType:{}, bytes:{}", message.getMsgID(), contentType, null == body ? 0 : body.length);
+        }
 
-                return str;
+        MessageCodec codec = codecOf(contentType);
 
-            } else {
+        try {
 
-                try {
+            return codec.decode(body, targetType);
 
-                    return objectMapper.readValue(str, targetClass);
+        } catch (Exception e) {
 
-                } catch (Exception e) {
+            log.info("convert failed. msgId:{}, contentType:{}, msgType:{}", message.getMsgID(), codec.getContentType(), targetType.getTypeName());
+            throw new RuntimeException("cannot convert message to " + targetType.getTypeName() + ", exception:" + e.getMessage(), e);
 
-                    log.info("convert failed. str:{}, msgType:{}", str, targetClass);
-                    throw new RuntimeException("cannot convert message to " + targetClass + "exception:{}" + e.getMessage() + e);
+        }
+    }
+
+    private byte[] decompress(Message message) throws IOException {
+
+        String contentEncoding = message.getUserProperties(MessageCompressor.CONTENT_ENCODING_PROPERTY);
+
+        if (!StringUtils.hasText(contentEncoding)) {
+            return message.getBody();
+        }
+
+        MessageCompressor messageCompressor = compressors.get(contentEncoding);
+
+        if (null == messageCompressor) {
+            throw new IllegalStateException("no compressor named:" + contentEncoding + ", registered:" + compressors.keySet());
+        }
+
+        long startNanos = System.nanoTime();
+
+        byte[] body = messageCompressor.decompress(message.getBody(), maxDecompressedBytes);
+
+        compressionMetrics.onDecompressed(contentEncoding, System.nanoTime() - startNanos);
+
+        return body;
+    }
+
+    /**
+     * @param contentType content type, may carry parameters eg `application/json;charset=UTF-8`
+     * @return codec, json codec when contentType is empty or has no registered codec
+     */
+    private MessageCodec codecOf(String contentType) {
+
+        if (!StringUtils.hasText(contentType)) {
+            return jsonCodec;
+        }
 
-                }
+        MessageCodec codec = codecs.get(contentType);
+
+        if (null == codec) {
+            try {
+                MimeType mimeType = MimeTypeUtils.parseMimeType(contentType);
+                codec = codecs.get(mimeType.getType() + "/" + mimeType.getSubtype());
+            } catch (InvalidMimeTypeException e) {
+                // malformed, falls back below
             }
         }
+
+        if (null == codec) {
+
+            if (unknownContentTypes.size() < MAX_WARNED_CONTENT_TYPES && unknownContentTypes.add(contentType)) {
+                log.warn("no codec of content type:{}, fall back to json. registered:{}", contentType, codecs.keySet());
+            }
+
+            return jsonCodec;
+        }
+
+        return codec;
+    }
+
+    @Override
+    public boolean acceptsPayloadObject() {
+        return true;
     }
 
     @Override
@@ -66,25 +275,22 @@ public class ApplicationJsonMessageMarshallingConverter implements MessageConver
 
         Object payloadObj = message.getPayload();
 
-        byte[] payloads;
-
-        if (payloadObj instanceof String) {
+        MessageHeaders headers = message.getHeaders();
 
-            payloads = ((String) payloadObj).getBytes(Charset.forName(charset));
+        Object contentType = Objects.nonNull(headers) ? headers.get(MessageHeaders.CONTENT_TYPE) : null;
 
-        } else {
+        MessageCodec codec = codecOf(null == contentType ? null : contentType.toString());
 
-            try {
+        byte[] payloads;
 
-                String jsonObj = this.objectMapper.writeValueAsString(payloadObj);
+        try {
 
-                payloads = jsonObj.getBytes(Charset.forName(charset));
+            payloads = codec.encode(payloadObj);
 
-            } catch (Exception e) {
+        } catch (Exception e) {
 
-                throw new RuntimeException("convert to RocketMQ message failed.", e);
+            throw new RuntimeException("convert to RocketMQ message failed.", e);
 
-            }
         }
 
         String[] tempArr = destination.split(":", 2);
@@ -96,7 +302,7 @@ public class ApplicationJsonMessageMarshallingConverter implements MessageConver
 
         com.aliyun.openservices.ons.api.Message onsMsg = new com.aliyun.openservices.ons.api.Message(topic, tags, payloads);
 
-        MessageHeaders headers = message.getHeaders();
+        Properties userProperties = new Properties();
 
         if (Objects.nonNull(headers) && !headers.isEmpty()) {
 
@@ -107,22 +313,109 @@ public class ApplicationJsonMessageMarshallingConverter implements MessageConver
                 onsMsg.setKey(keys.toString());
             }
 
-            Properties userProperties = new Properties();
+            // add other headers with prefix "USERS_"
+            headerCodec.encode(headers, userProperties);
 
-            headers.entrySet()
-                    .stream()
-                    // exclude "KEYS"
-                    .filter(entry -> !Objects.equals(entry.getKey(), MessageConst.PROPERTY_KEYS))
-                    .forEach(entry -> userProperties.setProperty("USERS_" + entry.getKey(), String.valueOf(entry.getValue())));
+        }
 
-            // add other properties with prefix "USERS_"
-            onsMsg.setUserProperties(userProperties);
+        // consumer picks decoder by this property
+        userProperties.setProperty(MessageCodec.CONTENT_TYPE_PROPERTY, codec.getContentType());
 
+        if (null != compressor && payloads.length >= compressionThreshold) {
+            onsMsg.setBody(compress(payloads, userProperties));
         }
 
+        onsMsg.setUserProperties(userProperties);
+
         return onsMsg;
     }
 
+    /**
+     * @return compressed body, original body if compression does not pay off
+     */
+    private byte[] compress(byte[] payloads, Properties userProperties) {
+
+        long startNanos = System.nanoTime();
+
+        byte[] compressed;
+
+        try {
+
+            compressed = compressor.compress(payloads);
+
+        } catch (Exception e) {
+
+            throw new RuntimeException("compress RocketMQ message body failed.", e);
+
+        }
+
+        compressionMetrics.onCompressed(compressor.getName(), payloads.length, compressed.length, System.nanoTime() - startNanos);
+
+        if (compressed.length >= payloads.length) {
+            return payloads;
+        }
+
+        userProperties.setProperty(MessageCompressor.CONTENT_ENCODING_PROPERTY, compressor.getName());
+
+        return compressed;
+    }
+
+    /**
+     * topic, tags, user properties and codec are resolved here, each write only serializes and copies properties
+     */
+    @Override
+    public <T> BoundMessageWriter<T> writerFor(String destination, Class<T> payloadType, Map<String, Object> headers) {
+
+        String[] tempArr = destination.split(":", 2);
+        String topic = tempArr[0];
+        String tags = tempArr.length > 1 ? tempArr[1] : "";
+
+        Object contentType = headers.get(MessageHeaders.CONTENT_TYPE);
+
+        MessageCodec codec = codecOf(null == contentType ? null : contentType.toString());
+
+        PayloadEncoder encoder = codec.encoderFor(payloadType);
+
+        Object keys = headers.get(MessageConst.PROPERTY_KEYS);
+        String boundKey = StringUtils.isEmpty(keys) ? null : keys.toString();
+
+        Properties boundProperties = new Properties();
+        headerCodec.encode(headers, boundProperties);
+        boundProperties.setProperty(MessageCodec.CONTENT_TYPE_PROPERTY, codec.getContentType());
+
+        return (payload, key) -> {
+
+            byte[] payloads;
+
+            try {
+
+                payloads = encoder.encode(payload);
+
+            } catch (Exception e) {
+
+                throw new RuntimeException("convert to RocketMQ message failed.", e);
+
+            }
+
+            Message onsMsg = new Message(topic, tags, payloads);
+
+            String messageKey = null != key ? key : boundKey;
+            if (null != messageKey) {
+                onsMsg.setKey(messageKey);
+            }
+
+            Properties userProperties = (Properties) boundProperties.clone();
+
+            if (null != compressor && payloads.length >= compressionThreshold) {
+                onsMsg.setBody(compress(payloads, userProperties));
+            }
+
+            onsMsg.setUserProperties(userProperties);
+
+            return onsMsg;
+        };
+    }
+
     @Override
     public String toString(Object payload) throws JsonProcessingException {
         return objectMapper.writeValueAsString(payload);
@@ -0,0 +1,24 @@
+package com.aihuishou.message.converter;
+
+import com.aliyun.openservices.ons.api.Message;
+import org.springframework.lang.Nullable;
+
+/**
+ * writes payloads of one type to one destination, topic, tags, headers and serializer are resolved once
+ * <note>
+ * thread safe
+ * </note>
+ *
+ * @author js.xie
+ * @see MessageConverter#writerFor(String, Class, java.util.Map)
+ */
+@FunctionalInterface
+public interface BoundMessageWriter<T> {
+
+    /**
+     * @param payload not null
+     * @param key     message key, null means the `KEYS` header bound to the writer if any
+     * @return new ons message
+     */
+    Message write(T payload, @Nullable String key);
+}
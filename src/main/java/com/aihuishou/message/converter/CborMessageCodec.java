@@ -0,0 +1,34 @@
+package com.aihuishou.message.converter;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+/**
+ * RFC 7049 CBOR codec, needs jackson-dataformat-cbor
+ *
+ * @author js.xie
+ */
+public class CborMessageCodec extends JacksonMessageCodec {
+
+    public static final String CONTENT_TYPE = "application/cbor";
+
+    public CborMessageCodec() {
+        this(new ObjectMapper(new CBORFactory())
+                .findAndRegisterModules()
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+    }
+
+    public CborMessageCodec(ObjectMapper objectMapper) {
+        super(CONTENT_TYPE, objectMapper);
+    }
+
+    /**
+     * codec whose mapper is configured like the given json mapper
+     *
+     * @param jsonMapper application's configured mapper
+     */
+    public static CborMessageCodec derivedFrom(ObjectMapper jsonMapper) {
+        return new CborMessageCodec(derive(jsonMapper, new CBORFactory()));
+    }
+}
@@ -0,0 +1,34 @@
+package com.aihuishou.message.converter;
+
+/**
+ * instrumentation of message body compression
+ *
+ * @author js.xie
+ */
+public interface CompressionMetrics {
+
+    CompressionMetrics NOOP = new CompressionMetrics() {
+    };
+
+    /**
+     * one body compressed before send
+     *
+     * @param algorithm       compressor name
+     * @param originalBytes   body size before compression
+     * @param compressedBytes body size after compression
+     * @param nanos           time spent
+     */
+    default void onCompressed(String algorithm, int originalBytes, int compressedBytes, long nanos) {
+
+    }
+
+    /**
+     * one body decompressed before decode
+     *
+     * @param algorithm compressor name
+     * @param nanos     time spent
+     */
+    default void onDecompressed(String algorithm, long nanos) {
+
+    }
+}
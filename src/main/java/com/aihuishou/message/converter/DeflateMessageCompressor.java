@@ -0,0 +1,103 @@
+package com.aihuishou.message.converter;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * zlib deflate of the jdk, deflater and inflater are reused per thread
+ *
+ * @author js.xie
+ */
+public class DeflateMessageCompressor implements MessageCompressor {
+
+    public static final String NAME = "deflate";
+
+    private final ThreadLocal<Deflater> deflaters;
+
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+
+    public DeflateMessageCompressor() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public DeflateMessageCompressor(int level) {
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level));
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] compress(byte[] body) {
+
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(body);
+        deflater.finish();
+
+        EncodeBuffer buffer = EncodeBuffer.acquire();
+
+        try {
+
+            byte[] chunk = new byte[Math.min(body.length, 8192) + 64];
+
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                buffer.write(chunk, 0, n);
+            }
+
+            return buffer.toByteArray();
+
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] body) throws IOException {
+        return decompress(body, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public byte[] decompress(byte[] body, int maxBytes) throws IOException {
+
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(body);
+
+        EncodeBuffer buffer = EncodeBuffer.acquire();
+
+        try {
+
+            byte[] chunk = new byte[8192];
+
+            while (!inflater.finished()) {
+
+                int n = inflater.inflate(chunk);
+
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("truncated deflate body");
+                }
+
+                if (buffer.size() + n > maxBytes) {
+                    throw new IOException("decompressed body is larger than " + maxBytes + " bytes");
+                }
+
+                buffer.write(chunk, 0, n);
+            }
+
+            return buffer.toByteArray();
+
+        } catch (DataFormatException e) {
+
+            throw new IOException("malformed deflate body", e);
+
+        } finally {
+            buffer.release();
+        }
+    }
+}
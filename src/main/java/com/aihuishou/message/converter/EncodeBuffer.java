@@ -0,0 +1,45 @@
+package com.aihuishou.message.converter;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * per thread output buffer payloads are serialized into, reused by every send on the thread
+ * <note>
+ * buffers grown beyond maxRetainedSize by one large payload are dropped, so one outlier does not pin memory
+ * </note>
+ *
+ * @author js.xie
+ */
+public final class EncodeBuffer extends ByteArrayOutputStream {
+
+    private static final int INITIAL_SIZE = 4096;
+
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<EncodeBuffer> BUFFERS = ThreadLocal.withInitial(EncodeBuffer::new);
+
+    private EncodeBuffer() {
+        super(INITIAL_SIZE);
+    }
+
+    /**
+     * buffer of current thread, empty
+     * <note>
+     * do not hold it across sends, call {@link #release()} when done
+     * </note>
+     */
+    public static EncodeBuffer acquire() {
+
+        EncodeBuffer buffer = BUFFERS.get();
+        buffer.reset();
+
+        return buffer;
+    }
+
+    public void release() {
+
+        if (buf.length > MAX_RETAINED_SIZE) {
+            BUFFERS.remove();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.aihuishou.message.converter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * gzip of the jdk, readable by any gzip tool
+ *
+ * @author js.xie
+ */
+public class GzipMessageCompressor implements MessageCompressor {
+
+    public static final String NAME = "gzip";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] compress(byte[] body) throws IOException {
+
+        EncodeBuffer buffer = EncodeBuffer.acquire();
+
+        try {
+
+            try (GZIPOutputStream out = new GZIPOutputStream(buffer, 8192)) {
+                out.write(body);
+            }
+
+            return buffer.toByteArray();
+
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] body) throws IOException {
+        return decompress(body, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public byte[] decompress(byte[] body, int maxBytes) throws IOException {
+
+        EncodeBuffer buffer = EncodeBuffer.acquire();
+
+        try {
+
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body), 8192)) {
+
+                byte[] chunk = new byte[8192];
+
+                int n;
+                while ((n = in.read(chunk)) != -1) {
+
+                    if (buffer.size() + n > maxBytes) {
+                        throw new IOException("decompressed body is larger than " + maxBytes + " bytes");
+                    }
+
+                    buffer.write(chunk, 0, n);
+                }
+            }
+
+            return buffer.toByteArray();
+
+        } finally {
+            buffer.release();
+        }
+    }
+}
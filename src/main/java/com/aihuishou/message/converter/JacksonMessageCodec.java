@@ -0,0 +1,127 @@
+package com.aihuishou.message.converter;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.deser.DefaultDeserializationContext;
+import com.fasterxml.jackson.databind.ser.DefaultSerializerProvider;
+
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * codec of any jackson data format, the format follows the factory of objectMapper
+ *
+ * @author js.xie
+ */
+public class JacksonMessageCodec implements MessageCodec {
+
+    private final String contentType;
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * readers by consumer handler argument type, resolved once per type
+     */
+    private final Map<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    /**
+     * writers by payload class, resolved once per class
+     */
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    public JacksonMessageCodec(String contentType, ObjectMapper objectMapper) {
+        this.contentType = contentType;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * serialize payload once into the buffer of current thread
+     */
+    @Override
+    public byte[] encode(Object payload) throws IOException {
+
+        EncodeBuffer buffer = EncodeBuffer.acquire();
+
+        try {
+
+            writers.computeIfAbsent(payload.getClass(), objectMapper::writerFor).writeValue(buffer, payload);
+
+            return buffer.toByteArray();
+
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * writer is resolved once only when payloadType cannot have subclasses, otherwise each payload is written by
+     * its runtime class so that fields of subclasses are kept
+     */
+    @Override
+    public PayloadEncoder encoderFor(Class<?> payloadType) {
+
+        if (!Modifier.isFinal(payloadType.getModifiers())) {
+            return this::encode;
+        }
+
+        ObjectWriter writer = writers.computeIfAbsent(payloadType, objectMapper::writerFor);
+
+        return payload -> {
+
+            EncodeBuffer buffer = EncodeBuffer.acquire();
+
+            try {
+
+                writer.writeValue(buffer, payload);
+
+                return buffer.toByteArray();
+
+            } finally {
+                buffer.release();
+            }
+        };
+    }
+
+    /**
+     * parse straight from message body, generic types eg `List<Foo>` are supported
+     */
+    @Override
+    public Object decode(byte[] body, Type targetType) throws IOException {
+        return readers.computeIfAbsent(targetType, type -> objectMapper.readerFor(objectMapper.getTypeFactory().constructType(type))).readValue(body);
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    /**
+     * mapper of another data format with the modules, features, date format and mix-ins of source,
+     * eg the application's json mapper
+     *
+     * @param source  configured mapper
+     * @param factory factory of the data format
+     * @return new mapper
+     */
+    protected static ObjectMapper derive(ObjectMapper source, JsonFactory factory) {
+
+        ObjectMapper mapper = new ObjectMapper(factory, (DefaultSerializerProvider) source.getSerializerProvider(),
+                (DefaultDeserializationContext) source.getDeserializationContext());
+
+        mapper.setSerializerFactory(source.getSerializerFactory());
+        mapper.setConfig(source.getSerializationConfig());
+        mapper.setConfig(source.getDeserializationConfig());
+        mapper.setInjectableValues(source.getInjectableValues());
+
+        return mapper;
+    }
+}
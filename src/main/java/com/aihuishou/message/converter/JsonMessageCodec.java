@@ -0,0 +1,54 @@
+package com.aihuishou.message.converter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.Objects;
+
+/**
+ * json codec, String payloads are taken as json text already
+ *
+ * @author js.xie
+ */
+public class JsonMessageCodec extends JacksonMessageCodec {
+
+    private final Charset charset;
+
+    public JsonMessageCodec(ObjectMapper objectMapper, Charset charset) {
+        super(MimeTypeUtils.APPLICATION_JSON_VALUE, objectMapper);
+        this.charset = charset;
+    }
+
+    @Override
+    public byte[] encode(Object payload) throws IOException {
+
+        if (payload instanceof String) {
+            return ((String) payload).getBytes(charset);
+        }
+
+        return super.encode(payload);
+    }
+
+    @Override
+    public PayloadEncoder encoderFor(Class<?> payloadType) {
+
+        if (String.class.equals(payloadType)) {
+            return payload -> ((String) payload).getBytes(charset);
+        }
+
+        return super.encoderFor(payloadType);
+    }
+
+    @Override
+    public Object decode(byte[] body, Type targetType) throws IOException {
+
+        if (Objects.equals(targetType, String.class)) {
+            return new String(body, charset);
+        }
+
+        return super.decode(body, targetType);
+    }
+}
@@ -0,0 +1,59 @@
+package com.aihuishou.message.converter;
+
+import org.springframework.messaging.MessageHeaders;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * body format of one content type
+ * <note>
+ * producer stamps content type of the codec into user property {@link #CONTENT_TYPE_PROPERTY}, consumer picks decoder
+ * by that property per message, so one topic may carry several formats while producers migrate
+ * </note>
+ *
+ * @author js.xie
+ * @see ApplicationJsonMessageMarshallingConverter
+ */
+public interface MessageCodec {
+
+    /**
+     * user property carries content type, same key as `contentType` header copied by the converter
+     */
+    String CONTENT_TYPE_PROPERTY = "USERS_" + MessageHeaders.CONTENT_TYPE;
+
+    /**
+     * @return mime type without parameters, eg `application/json`
+     */
+    String getContentType();
+
+    /**
+     * serialize payload into message body
+     *
+     * @param payload not null
+     * @return message body
+     * @throws IOException payload cannot be serialized
+     */
+    byte[] encode(Object payload) throws IOException;
+
+    /**
+     * serializer of payloads of one type, resolved once and reused by typed publishers.
+     * payloads may be subclasses of payloadType and are expected to be written by their runtime class
+     *
+     * @param payloadType payload class
+     * @return encoder
+     */
+    default PayloadEncoder encoderFor(Class<?> payloadType) {
+        return this::encode;
+    }
+
+    /**
+     * parse message body
+     *
+     * @param body       message body
+     * @param targetType consumer handler method generic argument type
+     * @return the method argument instance
+     * @throws IOException body cannot be parsed
+     */
+    Object decode(byte[] body, Type targetType) throws IOException;
+}
@@ -0,0 +1,45 @@
+package com.aihuishou.message.converter;
+
+import java.io.IOException;
+
+/**
+ * compression of message body, the producer stamps {@link #getName()} into user property
+ * {@link #CONTENT_ENCODING_PROPERTY} and the consumer undoes it before decoding
+ *
+ * @author js.xie
+ * @see ApplicationJsonMessageMarshallingConverter#setCompression(String, int)
+ * @see ApplicationJsonMessageMarshallingConverter#setCompressors(java.util.List)
+ */
+public interface MessageCompressor {
+
+    String CONTENT_ENCODING_PROPERTY = "USERS_contentEncoding";
+
+    /**
+     * @return encoding name carried by messages, eg `gzip`
+     */
+    String getName();
+
+    byte[] compress(byte[] body) throws IOException;
+
+    byte[] decompress(byte[] body) throws IOException;
+
+    /**
+     * decompress with a bound, so that a small crafted body cannot inflate into memory exhaustion
+     * <note>
+     *     default checks after decompressing, override it to stop as soon as the bound is passed
+     * </note>
+     *
+     * @param maxBytes max bytes of decompressed body
+     * @throws IOException if decompressed body is larger than maxBytes
+     */
+    default byte[] decompress(byte[] body, int maxBytes) throws IOException {
+
+        byte[] decompressed = decompress(body);
+
+        if (decompressed.length > maxBytes) {
+            throw new IOException("decompressed body is larger than " + maxBytes + " bytes");
+        }
+
+        return decompressed;
+    }
+}
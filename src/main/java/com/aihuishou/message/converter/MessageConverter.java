@@ -2,7 +2,13 @@ package com.aihuishou.message.converter;
 
 
 import com.aliyun.openservices.ons.api.Message;
+import com.aliyun.openservices.shade.com.alibaba.rocketmq.common.message.MessageConst;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import org.springframework.core.ResolvableType;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.lang.reflect.Type;
+import java.util.Map;
 
 /**
  * @author js.xie
@@ -20,6 +26,35 @@ public interface MessageConverter {
         throw new IllegalArgumentException("can not support convert");
     }
 
+    /**
+     * convert ali yun message to consumer handler method argument type, keep generics of the type
+     *
+     * @param message    ali yun message
+     * @param targetType consumer handler method generic argument type, eg `List<Foo>`
+     * @return Object the method argument instance
+     */
+    default Object fromMessage(Message message, Type targetType) {
+        return fromMessage(message, ResolvableType.forType(targetType).resolve(Object.class));
+    }
+
+    /**
+     * headers handed to consumer handlers accepting org.springframework.messaging.Message<?> or `@Header` arguments
+     *
+     * @param message ali yun message
+     * @return mutable headers
+     */
+    default Map<String, Object> headersOf(Message message) {
+        return MessageHeaderCodec.DEFAULT.decode(message);
+    }
+
+    /**
+     * whether {@link #toMessage(String, org.springframework.messaging.Message)} takes payload objects as they are.
+     * when false, senders hand it payloads already converted by {@link #toString(Object)}, String payloads as they are
+     */
+    default boolean acceptsPayloadObject() {
+        return false;
+    }
+
     /**
      * convert org.springframework.messaging.Message<?> to  ons Message
      *
@@ -31,6 +66,38 @@ public interface MessageConverter {
         throw new IllegalArgumentException("can not support convert");
     }
 
+    /**
+     * bind destination, payload type and static headers once, for typed publishers
+     *
+     * @param destination formats: `topicName:tags`
+     * @param payloadType payload class
+     * @param headers     headers of every message, `contentType` picks the codec
+     * @return writer
+     */
+    default <T> BoundMessageWriter<T> writerFor(String destination, Class<T> payloadType, Map<String, Object> headers) {
+
+        return (payload, key) -> {
+
+            Object content = payload;
+
+            if (!(payload instanceof String) && !acceptsPayloadObject()) {
+                try {
+                    content = toString(payload);
+                } catch (JsonProcessingException e) {
+                    throw new RuntimeException("convert to payload to String failed.", e);
+                }
+            }
+
+            MessageBuilder<Object> builder = MessageBuilder.withPayload(content).copyHeaders(headers);
+
+            if (null != key) {
+                builder.setHeader(MessageConst.PROPERTY_KEYS, key);
+            }
+
+            return toMessage(destination, builder.build());
+        };
+    }
+
     /**
      * convert payLoad to string
      *
@@ -0,0 +1,123 @@
+package com.aihuishou.message.converter;
+
+import com.aihuishou.message.constants.OnsHeaders;
+import com.aliyun.openservices.ons.api.Message;
+import com.aliyun.openservices.shade.com.alibaba.rocketmq.common.message.MessageConst;
+import org.springframework.messaging.MessageHeaders;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * maps spring message headers to ons user properties with prefix `USERS_` and back
+ * <note>
+ * prefixed names are cached, spring's `id` and `timestamp` headers are not sent since every message gets new ones
+ * </note>
+ *
+ * @author js.xie
+ */
+public class MessageHeaderCodec {
+
+    public static final MessageHeaderCodec DEFAULT = new MessageHeaderCodec();
+
+    public static final String USER_PROPERTY_PREFIX = "USERS_";
+
+    /**
+     * more distinct names than this are not cached, eg headers named after ids
+     */
+    private static final int MAX_CACHED_NAMES = 1024;
+
+    private final Map<String, String> propertyNames = new ConcurrentHashMap<>();
+
+    private final Map<String, String> headerNames = new ConcurrentHashMap<>();
+
+    /**
+     * copy headers into user properties, `KEYS` header is the message key and not copied
+     */
+    public void encode(Map<String, Object> headers, Properties userProperties) {
+
+        for (Map.Entry<String, Object> entry : headers.entrySet()) {
+
+            String name = entry.getKey();
+            Object value = entry.getValue();
+
+            if (null == value || MessageHeaders.ID.equals(name) || MessageHeaders.TIMESTAMP.equals(name) || MessageConst.PROPERTY_KEYS.equals(name)) {
+                continue;
+            }
+
+            userProperties.setProperty(propertyName(name), value instanceof String ? (String) value : value.toString());
+        }
+    }
+
+    /**
+     * headers of received message, user properties with prefix `USERS_` lose the prefix, others are kept as is
+     *
+     * @return mutable headers, including {@link OnsHeaders}
+     */
+    public Map<String, Object> decode(Message message) {
+
+        Properties userProperties = message.getUserProperties();
+
+        Map<String, Object> headers = new HashMap<>(null == userProperties ? 16 : userProperties.size() * 2 + 16);
+
+        if (null != userProperties) {
+            for (Map.Entry<Object, Object> entry : userProperties.entrySet()) {
+                headers.put(headerName((String) entry.getKey()), entry.getValue());
+            }
+        }
+
+        headers.put(OnsHeaders.TOPIC, message.getTopic());
+        headers.put(OnsHeaders.TAG, message.getTag());
+        headers.put(OnsHeaders.MESSAGE_ID, message.getMsgID());
+        headers.put(OnsHeaders.RECONSUME_TIMES, message.getReconsumeTimes());
+        headers.put(OnsHeaders.BORN_TIMESTAMP, message.getBornTimestamp());
+
+        if (null != message.getKey()) {
+            headers.put(OnsHeaders.KEYS, message.getKey());
+        }
+
+        if (null != message.getShardingKey()) {
+            headers.put(OnsHeaders.SHARDING_KEY, message.getShardingKey());
+        }
+
+        return headers;
+    }
+
+    private String propertyName(String headerName) {
+
+        String propertyName = propertyNames.get(headerName);
+
+        if (null == propertyName) {
+
+            propertyName = USER_PROPERTY_PREFIX + headerName;
+
+            if (propertyNames.size() < MAX_CACHED_NAMES) {
+                propertyNames.put(headerName, propertyName);
+            }
+        }
+
+        return propertyName;
+    }
+
+    private String headerName(String propertyName) {
+
+        if (!propertyName.startsWith(USER_PROPERTY_PREFIX)) {
+            return propertyName;
+        }
+
+        String headerName = headerNames.get(propertyName);
+
+        if (null == headerName) {
+
+            headerName = propertyName.substring(USER_PROPERTY_PREFIX.length());
+
+            if (headerNames.size() < MAX_CACHED_NAMES) {
+                headerNames.put(propertyName, headerName);
+            }
+        }
+
+        return headerName;
+    }
+}
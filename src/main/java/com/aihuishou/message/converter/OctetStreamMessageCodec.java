@@ -0,0 +1,43 @@
+package com.aihuishou.message.converter;
+
+import org.springframework.util.MimeTypeUtils;
+
+import java.lang.reflect.Type;
+import java.util.Objects;
+
+/**
+ * raw bytes codec, byte[] payloads are the body as is
+ * <note>
+ * chosen only by `contentType` header `application/octet-stream`, byte[] payloads of other content types are
+ * base64 json strings as before. consumers older than this codec read such a body as json and fail
+ * </note>
+ *
+ * @author js.xie
+ */
+public class OctetStreamMessageCodec implements MessageCodec {
+
+    @Override
+    public String getContentType() {
+        return MimeTypeUtils.APPLICATION_OCTET_STREAM_VALUE;
+    }
+
+    @Override
+    public byte[] encode(Object payload) {
+
+        if (!(payload instanceof byte[])) {
+            throw new IllegalArgumentException(getContentType() + " payload must be byte[], but was " + payload.getClass().getName());
+        }
+
+        return (byte[]) payload;
+    }
+
+    @Override
+    public Object decode(byte[] body, Type targetType) {
+
+        if (!Objects.equals(targetType, byte[].class)) {
+            throw new IllegalArgumentException(getContentType() + " body can only be received as byte[], not " + targetType.getTypeName());
+        }
+
+        return body;
+    }
+}
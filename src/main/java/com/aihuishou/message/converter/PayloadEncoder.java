@@ -0,0 +1,15 @@
+package com.aihuishou.message.converter;
+
+import java.io.IOException;
+
+/**
+ * serializer of one payload type, resolved once
+ *
+ * @author js.xie
+ * @see MessageCodec#encoderFor(Class)
+ */
+@FunctionalInterface
+public interface PayloadEncoder {
+
+    byte[] encode(Object payload) throws IOException;
+}
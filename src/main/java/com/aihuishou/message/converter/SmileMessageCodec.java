@@ -0,0 +1,34 @@
+package com.aihuishou.message.converter;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * binary json codec, needs jackson-dataformat-smile
+ *
+ * @author js.xie
+ */
+public class SmileMessageCodec extends JacksonMessageCodec {
+
+    public static final String CONTENT_TYPE = "application/x-jackson-smile";
+
+    public SmileMessageCodec() {
+        this(new ObjectMapper(new SmileFactory())
+                .findAndRegisterModules()
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+    }
+
+    public SmileMessageCodec(ObjectMapper objectMapper) {
+        super(CONTENT_TYPE, objectMapper);
+    }
+
+    /**
+     * codec whose mapper is configured like the given json mapper
+     *
+     * @param jsonMapper application's configured mapper
+     */
+    public static SmileMessageCodec derivedFrom(ObjectMapper jsonMapper) {
+        return new SmileMessageCodec(derive(jsonMapper, new SmileFactory()));
+    }
+}
@@ -0,0 +1,47 @@
+package com.aihuishou.message.error;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * failed messages of one batch with same topic and exception type
+ *
+ * @author js.xie
+ * @see ErrorMessageHandlerStrategy#handleErrorMessages(List)
+ */
+@Getter
+public class ErrorMessageGroup {
+
+    private final String topic;
+
+    private final Class<? extends Throwable> exceptionType;
+
+    private final List<FailedMessage> failedMessages = new ArrayList<>();
+
+    public ErrorMessageGroup(String topic, Class<? extends Throwable> exceptionType) {
+        this.topic = topic;
+        this.exceptionType = exceptionType;
+    }
+
+    void add(FailedMessage failedMessage) {
+        failedMessages.add(failedMessage);
+    }
+
+    public List<FailedMessage> getFailedMessages() {
+        return Collections.unmodifiableList(failedMessages);
+    }
+
+    /**
+     * first failed message of the group, representative for notification
+     */
+    public FailedMessage getFirst() {
+        return failedMessages.get(0);
+    }
+
+    public int size() {
+        return failedMessages.size();
+    }
+}
@@ -3,11 +3,14 @@ package com.aihuishou.message.error;
 import com.aihuishou.message.properties.ConsumerProperties;
 import com.aliyun.openservices.ons.api.Message;
 
+import java.util.List;
+
 /**
  * strategy for error message when large than
  *
  * @author js.xie
  * @see ConsumerProperties#consumeFailedNum
+ * @see ErrorMessagePipeline
  */
 public interface ErrorMessageHandlerStrategy {
 
@@ -21,4 +24,30 @@ public interface ErrorMessageHandlerStrategy {
 
     }
 
+    /**
+     * whether strategy keeps error messages so they can be replayed, eg a dead letter journal.
+     * such a strategy gets a message on the consume thread, the message is committed instead of being reconsumed
+     * unless {@link #handleErrorMessages(List)} throws, so it must throw when it did not keep the message
+     */
+    default boolean keepsMessage() {
+        return false;
+    }
+
+    /**
+     * handle one batch of error messages, grouped by topic and exception type.
+     * default hands every message to {@link #handleErrorMessage(Message, Throwable)},
+     * override it to eg send one notification per group
+     *
+     * @param groups error message groups
+     */
+    default void handleErrorMessages(List<ErrorMessageGroup> groups) {
+
+        for (ErrorMessageGroup group : groups) {
+            for (FailedMessage failedMessage : group.getFailedMessages()) {
+                handleErrorMessage(failedMessage.getMessage(), failedMessage.getThrowable());
+            }
+        }
+
+    }
+
 }
@@ -0,0 +1,274 @@
+package com.aihuishou.message.error;
+
+import com.aihuishou.message.constants.ErrorOverflowPolicy;
+import com.aihuishou.message.properties.ConsumerContainerProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.util.CollectionUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * hand failed messages to {@link ErrorMessageHandlerStrategy}
+ * <note>
+ * strategies keeping messages get a failed message on the consume thread, before it is committed, so a message
+ * is committed only once it is kept. other strategies get it on one dedicated thread: failed messages wait in a
+ * bounded queue, they are drained in batches, grouped by topic and exception type. when the queue is full the
+ * configured overflow policy applies, it never drops a message which is not kept elsewhere.
+ * </note>
+ *
+ * @author js.xie
+ */
+@Slf4j
+public class ErrorMessagePipeline implements DisposableBean {
+
+    /**
+     * how often an idle worker checks whether pipeline is stopping
+     */
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final BlockingQueue<FailedMessage> queue;
+
+    /**
+     * strategies keeping messages, run on consume thread
+     */
+    private final List<ErrorMessageHandlerStrategy> keepers;
+
+    /**
+     * other strategies, run on worker
+     */
+    private final List<ErrorMessageHandlerStrategy> notifiers;
+
+    private final ConsumerContainerProperties.ErrorHandler properties;
+
+    private final Thread worker;
+
+    private final AtomicLong discarded = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    public ErrorMessagePipeline(ConsumerContainerProperties.ErrorHandler properties, List<ErrorMessageHandlerStrategy> strategies) {
+
+        this.properties = properties;
+        this.keepers = new ArrayList<>();
+        this.notifiers = new ArrayList<>();
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+
+        if (!CollectionUtils.isEmpty(strategies)) {
+            for (ErrorMessageHandlerStrategy strategy : strategies) {
+                (strategy.keepsMessage() ? keepers : notifiers).add(strategy);
+            }
+        }
+
+        this.worker = new Thread(this::drain, "mq-error-message-handler");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * hand failed message to strategies keeping messages, then queue it for the others
+     * <note>
+     *     keeping strategies run on the calling thread. the other strategies get a queued message shortly after,
+     *     it is lost for them if the process dies before that
+     * </note>
+     *
+     * @param failedMessage failed message
+     * @return true if every strategy keeping messages handled it, so it does not need to be reconsumed,
+     * false if there is none or one of them failed
+     */
+    public boolean submit(FailedMessage failedMessage) {
+
+        boolean kept = keep(failedMessage);
+
+        if (!notifiers.isEmpty()) {
+            enqueue(failedMessage);
+        }
+
+        return kept;
+    }
+
+    /**
+     * number of failed messages dropped by overflow policy before strategies keeping no messages got them
+     */
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    /**
+     * let worker drain the queue, interrupt it only when it does not finish within shutdownTimeoutMillis
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+
+        running = false;
+
+        worker.join(properties.getShutdownTimeoutMillis());
+
+        if (worker.isAlive()) {
+            worker.interrupt();
+            worker.join(properties.getShutdownTimeoutMillis());
+        }
+
+        // strategies are not run concurrently with a worker stuck in one of them
+        if (worker.isAlive()) {
+            log.warn("error message handler did not stop, {} failed messages left unhandled", queue.size());
+            return;
+        }
+
+        // hand over what is left on the calling thread
+        List<FailedMessage> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            handle(rest);
+        }
+    }
+
+    private void drain() {
+
+        List<FailedMessage> batch = new ArrayList<>(properties.getBatchSize());
+
+        // queued messages are still handled once stopping
+        while (running || !queue.isEmpty()) {
+
+            try {
+
+                FailedMessage first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (null == first) {
+                    continue;
+                }
+                batch.add(first);
+
+                // linger for batch to fill up
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getLingerMillis());
+                while (batch.size() < properties.getBatchSize()) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || queue.drainTo(batch, properties.getBatchSize() - batch.size()) == 0 && !pollInto(batch, remaining)) {
+                        break;
+                    }
+                }
+
+                handle(batch);
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+
+                if (!batch.isEmpty()) {
+                    handle(batch);
+                }
+
+                return;
+
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private boolean keep(FailedMessage failedMessage) {
+
+        if (keepers.isEmpty()) {
+            return false;
+        }
+
+        List<ErrorMessageGroup> groups = group(Collections.singletonList(failedMessage));
+
+        for (ErrorMessageHandlerStrategy keeper : keepers) {
+            try {
+                keeper.handleErrorMessages(groups);
+            } catch (Throwable throwable) {
+                log.error("error message handler failed to keep message, consume it again. strategy:{}, msgId:{}",
+                        keeper.getClass().getName(), failedMessage.getMessage().getMsgID(), throwable);
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void enqueue(FailedMessage failedMessage) {
+
+        if (running && queue.offer(failedMessage)) {
+            return;
+        }
+
+        ErrorOverflowPolicy overflowPolicy = running ? properties.getOverflowPolicy() : ErrorOverflowPolicy.CALLER_RUNS;
+
+        switch (overflowPolicy) {
+            case DISCARD_OLDEST:
+                FailedMessage oldest = queue.poll();
+                if (null != oldest) {
+                    onDiscard(oldest);
+                }
+                if (!queue.offer(failedMessage)) {
+                    onDiscard(failedMessage);
+                }
+                break;
+            case CALLER_RUNS:
+                handle(Collections.singletonList(failedMessage));
+                break;
+            case DISCARD:
+            default:
+                onDiscard(failedMessage);
+                break;
+        }
+    }
+
+    private boolean pollInto(List<FailedMessage> batch, long timeoutNanos) throws InterruptedException {
+
+        FailedMessage next = queue.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+
+        if (null == next) {
+            return false;
+        }
+
+        batch.add(next);
+        return true;
+    }
+
+    private void handle(List<FailedMessage> batch) {
+
+        List<ErrorMessageGroup> groups = group(batch);
+
+        for (ErrorMessageHandlerStrategy strategy : notifiers) {
+            try {
+                strategy.handleErrorMessages(groups);
+            } catch (Throwable throwable) {
+                log.error("error message handler failed. strategy:{}, messages:{}", strategy.getClass().getName(), batch.size(), throwable);
+            }
+        }
+    }
+
+    private List<ErrorMessageGroup> group(List<FailedMessage> batch) {
+
+        Map<String, ErrorMessageGroup> groups = new LinkedHashMap<>();
+
+        for (FailedMessage failedMessage : batch) {
+
+            String topic = failedMessage.getMessage().getTopic();
+            Class<? extends Throwable> exceptionType = failedMessage.getThrowable().getClass();
+
+            groups.computeIfAbsent(Objects.toString(topic) + "|" + exceptionType.getName(), key -> new ErrorMessageGroup(topic, exceptionType))
+                    .add(failedMessage);
+        }
+
+        return new ArrayList<>(groups.values());
+    }
+
+    private void onDiscard(FailedMessage failedMessage) {
+
+        long count = discarded.incrementAndGet();
+
+        log.warn("error message queue is full, discard failed message. msgId:{}, topic:{}, discarded:{}",
+                failedMessage.getMessage().getMsgID(), failedMessage.getMessage().getTopic(), count);
+    }
+}
@@ -0,0 +1,31 @@
+package com.aihuishou.message.error;
+
+import com.aliyun.openservices.ons.api.Message;
+import lombok.Getter;
+
+/**
+ * message failed to consume and the exception
+ *
+ * @author js.xie
+ */
+@Getter
+public class FailedMessage {
+
+    private final Message message;
+
+    private final Throwable throwable;
+
+    /**
+     * consumer group of the container which failed to consume
+     */
+    private final String consumerGroup;
+
+    private final long failedAt;
+
+    public FailedMessage(Message message, Throwable throwable, String consumerGroup) {
+        this.message = message;
+        this.throwable = throwable;
+        this.consumerGroup = consumerGroup;
+        this.failedAt = System.currentTimeMillis();
+    }
+}
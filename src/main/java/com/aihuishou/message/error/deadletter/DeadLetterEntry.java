@@ -0,0 +1,177 @@
+package com.aihuishou.message.error.deadletter;
+
+import com.aliyun.openservices.ons.api.Message;
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * one message recorded in {@link DeadLetterJournal}
+ *
+ * @author js.xie
+ */
+@Getter
+public class DeadLetterEntry {
+
+    private static final int MAX_EXCEPTION_MESSAGE_LENGTH = 1024;
+
+    private final long failedAt;
+
+    private final String consumerGroup;
+
+    private final String topic;
+
+    private final String tag;
+
+    private final String key;
+
+    private final String msgId;
+
+    private final int reconsumeTimes;
+
+    private final Properties userProperties;
+
+    private final String exceptionType;
+
+    private final String exceptionMessage;
+
+    private final byte[] body;
+
+    private DeadLetterEntry(long failedAt, String consumerGroup, String topic, String tag, String key, String msgId, int reconsumeTimes,
+                            Properties userProperties, String exceptionType, String exceptionMessage, byte[] body) {
+        this.failedAt = failedAt;
+        this.consumerGroup = consumerGroup;
+        this.topic = topic;
+        this.tag = tag;
+        this.key = key;
+        this.msgId = msgId;
+        this.reconsumeTimes = reconsumeTimes;
+        this.userProperties = userProperties;
+        this.exceptionType = exceptionType;
+        this.exceptionMessage = exceptionMessage;
+        this.body = body;
+    }
+
+    public static DeadLetterEntry of(Message message, Throwable throwable, String consumerGroup, long failedAt) {
+
+        Properties userProperties = new Properties();
+        if (null != message.getUserProperties()) {
+            userProperties.putAll(message.getUserProperties());
+        }
+
+        String exceptionMessage = null == throwable ? "" : String.valueOf(throwable.getMessage());
+        if (exceptionMessage.length() > MAX_EXCEPTION_MESSAGE_LENGTH) {
+            exceptionMessage = exceptionMessage.substring(0, MAX_EXCEPTION_MESSAGE_LENGTH);
+        }
+
+        return new DeadLetterEntry(failedAt, consumerGroup, message.getTopic(), message.getTag(), message.getKey(), null == message.getMsgID() ? "" : message.getMsgID(),
+                message.getReconsumeTimes(), userProperties, null == throwable ? "" : throwable.getClass().getName(), exceptionMessage,
+                null == message.getBody() ? new byte[0] : message.getBody());
+    }
+
+    /**
+     * rebuild ons message to be sent or consumed again
+     */
+    public Message toMessage() {
+
+        Message message = new Message(topic, tag, body);
+
+        if (!key.isEmpty()) {
+            message.setKey(key);
+        }
+
+        Properties properties = new Properties();
+        properties.putAll(userProperties);
+        message.setUserProperties(properties);
+
+        return message;
+    }
+
+    byte[] encode() throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length + 256);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeLong(failedAt);
+        writeString(out, consumerGroup);
+        writeString(out, topic);
+        writeString(out, tag);
+        writeString(out, key);
+        writeString(out, msgId);
+        out.writeInt(reconsumeTimes);
+
+        out.writeInt(userProperties.size());
+        for (Map.Entry<Object, Object> entry : userProperties.entrySet()) {
+            writeString(out, String.valueOf(entry.getKey()));
+            writeString(out, String.valueOf(entry.getValue()));
+        }
+
+        writeString(out, exceptionType);
+        writeString(out, exceptionMessage);
+
+        out.writeInt(body.length);
+        out.write(body);
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static DeadLetterEntry decode(InputStream input) throws IOException {
+
+        DataInputStream in = new DataInputStream(input);
+
+        long failedAt = in.readLong();
+        String consumerGroup = readString(in);
+        String topic = readString(in);
+        String tag = readString(in);
+        String key = readString(in);
+        String msgId = readString(in);
+        int reconsumeTimes = in.readInt();
+
+        Properties userProperties = new Properties();
+        int propertyCount = in.readInt();
+        for (int i = 0; i < propertyCount; i++) {
+            userProperties.setProperty(readString(in), readString(in));
+        }
+
+        String exceptionType = readString(in);
+        String exceptionMessage = readString(in);
+
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+
+        return new DeadLetterEntry(failedAt, consumerGroup, topic, tag, key, msgId, reconsumeTimes, userProperties, exceptionType, exceptionMessage, body);
+    }
+
+    /**
+     * 4 bytes length and utf-8 bytes, writeUTF is limited to 64KB
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+
+        byte[] bytes = (null == value ? "" : value).getBytes(StandardCharsets.UTF_8);
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return "DeadLetterEntry{msgId=" + msgId + ", topic=" + topic + ", tag=" + tag + ", key=" + key + ", consumerGroup=" + consumerGroup
+                + ", exceptionType=" + exceptionType + ", failedAt=" + failedAt + "}";
+    }
+}
@@ -0,0 +1,338 @@
+package com.aihuishou.message.error.deadletter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * append only journal of dead letter messages on local disk
+ * <note>
+ * the journal is a directory of fixed size memory mapped segments named by sequence. each record is a 4 bytes
+ * length followed by an encoded {@link DeadLetterEntry}, length is written last so a reader never sees half a
+ * record, zero length marks the end of a segment. a full segment is left as is and a new one is started.
+ * a message is recorded once, entries with a msgId already in the journal are skipped, only the latest msgIdCapacity
+ * msgIds are remembered for that. the active segment is forced to disk every flushIntervalMillis when written,
+ * entries appended since the last force may be lost if the machine crashes.
+ * </note>
+ *
+ * @author js.xie
+ */
+@Slf4j
+public class DeadLetterJournal implements DisposableBean {
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private static final int LENGTH_SIZE = 4;
+
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+
+    private static final int DEFAULT_MSG_ID_CAPACITY = 100000;
+
+    private final Path dir;
+
+    private final int segmentSize;
+
+    private FileChannel activeChannel;
+
+    private MappedByteBuffer activeSegment;
+
+    private long activeSequence;
+
+    private int writePosition;
+
+    /**
+     * whether active segment is written since last force
+     */
+    private boolean dirty;
+
+    /**
+     * msgIds of latest recorded entries
+     */
+    private final Set<String> msgIds;
+
+    /**
+     * null when pages are flushed by the operating system only
+     */
+    private final ScheduledThreadPoolExecutor flushScheduler;
+
+    public DeadLetterJournal(String dir, int segmentSize) throws IOException {
+        this(dir, segmentSize, DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_MSG_ID_CAPACITY);
+    }
+
+    /**
+     * @param dir                 journal directory
+     * @param segmentSize         bytes of one segment
+     * @param flushIntervalMillis milliseconds between forces of active segment, 0 leaves it to the operating system
+     * @param msgIdCapacity       max msgIds remembered to skip entries already recorded
+     */
+    public DeadLetterJournal(String dir, int segmentSize, long flushIntervalMillis, int msgIdCapacity) throws IOException {
+
+        this.dir = Paths.get(dir);
+        this.segmentSize = segmentSize;
+        this.msgIds = newMsgIdSet(msgIdCapacity);
+
+        Files.createDirectories(this.dir);
+
+        List<Path> segments = segments();
+
+        if (segments.isEmpty()) {
+            openSegment(0);
+        } else {
+            Path last = segments.get(segments.size() - 1);
+            openSegment(sequenceOf(last));
+            this.writePosition = endOf(activeSegment);
+        }
+
+        read(entry -> msgIds.add(entry.getMsgId()));
+
+        if (flushIntervalMillis > 0) {
+
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ons-dead-letter-flush-");
+            threadFactory.setDaemon(true);
+
+            this.flushScheduler = new ScheduledThreadPoolExecutor(1, threadFactory);
+            this.flushScheduler.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+
+        } else {
+            this.flushScheduler = null;
+        }
+
+        log.info("dead letter journal opened. dir:{}, segments:{}", this.dir, Math.max(1, segments.size()));
+    }
+
+    /**
+     * append entry, roll to next segment when active one is full
+     *
+     * @param entry dead letter
+     * @return false if message of entry is already recorded
+     */
+    public synchronized boolean append(DeadLetterEntry entry) throws IOException {
+
+        if (!entry.getMsgId().isEmpty() && msgIds.contains(entry.getMsgId())) {
+            return false;
+        }
+
+        byte[] record = entry.encode();
+
+        // keep room for the zero length end mark
+        if (LENGTH_SIZE + record.length + LENGTH_SIZE > segmentSize) {
+            throw new IllegalArgumentException("dead letter of " + record.length + " bytes is larger than segment size " + segmentSize + ", msgId:" + entry.getMsgId());
+        }
+
+        if (writePosition + LENGTH_SIZE + record.length + LENGTH_SIZE > segmentSize) {
+            activeSegment.force();
+            activeChannel.close();
+            openSegment(activeSequence + 1);
+        }
+
+        activeSegment.position(writePosition + LENGTH_SIZE);
+        activeSegment.put(record);
+        activeSegment.putInt(writePosition, record.length);
+
+        writePosition += LENGTH_SIZE + record.length;
+        dirty = true;
+
+        if (!entry.getMsgId().isEmpty()) {
+            msgIds.add(entry.getMsgId());
+        }
+
+        return true;
+    }
+
+    /**
+     * force active segment to disk if it is written since last force
+     * <note>
+     *     force runs outside the journal lock so appends are not held back, a segment rolled meanwhile was forced
+     *     on roll already
+     * </note>
+     */
+    public void flush() {
+
+        MappedByteBuffer segment;
+
+        synchronized (this) {
+
+            if (!dirty) {
+                return;
+            }
+
+            dirty = false;
+            segment = activeSegment;
+        }
+
+        try {
+            segment.force();
+        } catch (RuntimeException e) {
+            log.warn("force dead letter journal failed. dir:{}", dir, e);
+        }
+    }
+
+    /**
+     * feed every entry to consumer, oldest first
+     * <note>
+     *     a segment is decoded under the journal lock and fed to consumer after, so a slow consumer does not hold
+     *     appends back. segments deleted by {@link #clear()} meanwhile are skipped
+     * </note>
+     *
+     * @param consumer entry consumer
+     * @return number of entries
+     */
+    public long read(Consumer<DeadLetterEntry> consumer) throws IOException {
+
+        long count = 0;
+
+        for (Path segment : segmentsLocked()) {
+
+            List<DeadLetterEntry> entries = readSegment(segment);
+
+            for (DeadLetterEntry entry : entries) {
+                consumer.accept(entry);
+            }
+
+            count += entries.size();
+        }
+
+        return count;
+    }
+
+    private synchronized List<Path> segmentsLocked() throws IOException {
+        return segments();
+    }
+
+    private synchronized List<DeadLetterEntry> readSegment(Path segment) throws IOException {
+
+        List<DeadLetterEntry> entries = new ArrayList<>();
+
+        if (!Files.exists(segment)) {
+            return entries;
+        }
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        int position = 0;
+        while (position + LENGTH_SIZE <= buffer.limit()) {
+
+            int length = buffer.getInt(position);
+            if (length <= 0) {
+                break;
+            }
+
+            byte[] record = new byte[length];
+            buffer.position(position + LENGTH_SIZE);
+            buffer.get(record);
+
+            entries.add(DeadLetterEntry.decode(new ByteArrayInputStream(record)));
+
+            position += LENGTH_SIZE + length;
+        }
+
+        return entries;
+    }
+
+    /**
+     * delete every segment and start over
+     */
+    public synchronized void clear() throws IOException {
+
+        activeChannel.close();
+
+        for (Path segment : segments()) {
+            Files.deleteIfExists(segment);
+        }
+
+        msgIds.clear();
+
+        openSegment(0);
+    }
+
+    @Override
+    public void destroy() throws IOException {
+
+        if (null != flushScheduler) {
+            flushScheduler.shutdownNow();
+        }
+
+        synchronized (this) {
+            activeSegment.force();
+            activeChannel.close();
+        }
+    }
+
+    private void openSegment(long sequence) throws IOException {
+
+        this.activeSequence = sequence;
+        this.activeChannel = FileChannel.open(dir.resolve(String.format("%020d%s", sequence, SEGMENT_SUFFIX)),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.activeSegment = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        this.writePosition = 0;
+    }
+
+    private List<Path> segments() throws IOException {
+
+        try (Stream<Path> files = Files.list(dir)) {
+
+            List<Path> segments = files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .collect(Collectors.toList());
+
+            Collections.sort(segments);
+
+            return new ArrayList<>(segments);
+        }
+    }
+
+    private static Set<String> newMsgIdSet(int capacity) {
+
+        return Collections.newSetFromMap(new LinkedHashMap<String, Boolean>() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > capacity;
+            }
+        });
+    }
+
+    private static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static int endOf(MappedByteBuffer segment) {
+
+        int position = 0;
+
+        while (position + LENGTH_SIZE <= segment.limit()) {
+            int length = segment.getInt(position);
+            if (length <= 0) {
+                break;
+            }
+            position += LENGTH_SIZE + length;
+        }
+
+        return position;
+    }
+}
@@ -0,0 +1,64 @@
+package com.aihuishou.message.error.deadletter;
+
+import com.aihuishou.message.error.ErrorMessageGroup;
+import com.aihuishou.message.error.ErrorMessageHandlerStrategy;
+import com.aihuishou.message.error.FailedMessage;
+import com.aliyun.openservices.ons.api.Message;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * record every error message in {@link DeadLetterJournal} so that it can be replayed later, once per msgId
+ * <note>
+ * a failed append is thrown, so the message is consumed again instead of being committed
+ * </note>
+ *
+ * @author js.xie
+ * @see DeadLetterReplayer
+ */
+@Slf4j
+public class DeadLetterJournalErrorMessageHandlerStrategy implements ErrorMessageHandlerStrategy {
+
+    private final DeadLetterJournal journal;
+
+    public DeadLetterJournalErrorMessageHandlerStrategy(DeadLetterJournal journal) {
+        this.journal = journal;
+    }
+
+    @Override
+    public boolean keepsMessage() {
+        return true;
+    }
+
+    @Override
+    public void handleErrorMessage(Message message, Throwable throwable) {
+        append(message, throwable, "", System.currentTimeMillis());
+    }
+
+    @Override
+    public void handleErrorMessages(List<ErrorMessageGroup> groups) {
+
+        for (ErrorMessageGroup group : groups) {
+            for (FailedMessage failedMessage : group.getFailedMessages()) {
+                append(failedMessage.getMessage(), failedMessage.getThrowable(), failedMessage.getConsumerGroup(), failedMessage.getFailedAt());
+            }
+        }
+    }
+
+    private void append(Message message, Throwable throwable, String consumerGroup, long failedAt) {
+
+        boolean appended;
+
+        try {
+            appended = journal.append(DeadLetterEntry.of(message, throwable, consumerGroup, failedAt));
+        } catch (IOException e) {
+            throw new IllegalStateException("append dead letter failed. msgId:" + message.getMsgID() + ", topic:" + message.getTopic(), e);
+        }
+
+        if (!appended) {
+            log.debug("dead letter already recorded, skip. msgId:{}, topic:{}", message.getMsgID(), message.getTopic());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.aihuishou.message.error.deadletter;
+
+import com.aihuishou.message.consumer.container.MqListenerContainer;
+import com.aihuishou.message.producer.MqTemplate;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+/**
+ * stream dead letters back through a listener container or out via {@link MqTemplate} at a controlled rate
+ * <note>
+ * replay does not remove entries, call {@link DeadLetterJournal#clear()} when they are no longer needed
+ * </note>
+ *
+ * @author js.xie
+ */
+@Slf4j
+public class DeadLetterReplayer {
+
+    private final DeadLetterJournal journal;
+
+    public DeadLetterReplayer(DeadLetterJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * consume matched dead letters again with the container's handler, on the calling thread
+     *
+     * @param container         listener container
+     * @param filter            which entries to replay
+     * @param permitsPerSecond  max entries per second
+     * @return replay result
+     */
+    public ReplayResult replayTo(MqListenerContainer container, Predicate<DeadLetterEntry> filter, double permitsPerSecond) throws IOException {
+        return replay(filter, permitsPerSecond, entry -> container.replay(entry.toMessage()));
+    }
+
+    /**
+     * send matched dead letters to their topic again, on the calling thread
+     *
+     * @param mqTemplate       producer template
+     * @param filter           which entries to replay
+     * @param permitsPerSecond max entries per second
+     * @return replay result
+     */
+    public ReplayResult replayTo(MqTemplate mqTemplate, Predicate<DeadLetterEntry> filter, double permitsPerSecond) throws IOException {
+        return replay(filter, permitsPerSecond, entry -> mqTemplate.syncSend(entry.toMessage()));
+    }
+
+    /**
+     * hand matched dead letters to sink, failures are logged and counted
+     *
+     * @param filter           which entries to replay
+     * @param permitsPerSecond max entries per second
+     * @param sink             where entries go
+     * @return replay result
+     */
+    public ReplayResult replay(Predicate<DeadLetterEntry> filter, double permitsPerSecond, DeadLetterSink sink) throws IOException {
+
+        Assert.isTrue(permitsPerSecond > 0, "permitsPerSecond must be positive");
+
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        long[] nextSlot = {System.nanoTime()};
+
+        AtomicLong replayed = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+
+        journal.read(entry -> {
+
+            if (!filter.test(entry)) {
+                return;
+            }
+
+            long waitNanos = nextSlot[0] - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+            nextSlot[0] = Math.max(nextSlot[0], System.nanoTime()) + intervalNanos;
+
+            try {
+                sink.accept(entry);
+                replayed.incrementAndGet();
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                log.error("replay dead letter failed. {}", entry, e);
+            }
+        });
+
+        log.info("dead letters replayed:{}, failed:{}", replayed.get(), failed.get());
+
+        return new ReplayResult(replayed.get(), failed.get());
+    }
+
+    @FunctionalInterface
+    public interface DeadLetterSink {
+
+        void accept(DeadLetterEntry entry) throws Exception;
+    }
+
+    @Value
+    public static class ReplayResult {
+
+        long replayed;
+
+        long failed;
+    }
+}
@@ -0,0 +1,106 @@
+package com.aihuishou.message.metrics;
+
+import com.aihuishou.message.converter.CompressionMetrics;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * micrometer meters of message body compression, tagged by algorithm
+ *
+ * @author js.xie
+ */
+public class MicrometerCompressionMetrics implements CompressionMetrics {
+
+    private static final String PREFIX = "ons.converter.compression.";
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    private final Map<String, AlgorithmMeters> meters = new ConcurrentHashMap<>();
+
+    public MicrometerCompressionMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void onCompressed(String algorithm, int originalBytes, int compressedBytes, long nanos) {
+
+        AlgorithmMeters algorithmMeters = metersOf(algorithm);
+
+        if (null != algorithmMeters) {
+            algorithmMeters.compress.record(nanos, TimeUnit.NANOSECONDS);
+            algorithmMeters.ratio.record(originalBytes == 0 ? 1.0 : (double) compressedBytes / originalBytes);
+            algorithmMeters.saved.record(originalBytes - compressedBytes);
+        }
+    }
+
+    @Override
+    public void onDecompressed(String algorithm, long nanos) {
+
+        AlgorithmMeters algorithmMeters = metersOf(algorithm);
+
+        if (null != algorithmMeters) {
+            algorithmMeters.decompress.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private AlgorithmMeters metersOf(String algorithm) {
+
+        AlgorithmMeters algorithmMeters = meters.get(algorithm);
+
+        if (null == algorithmMeters) {
+
+            MeterRegistry registry = meterRegistry.getIfAvailable();
+
+            if (null == registry) {
+                return null;
+            }
+
+            algorithmMeters = meters.computeIfAbsent(algorithm, name -> new AlgorithmMeters(registry, name));
+        }
+
+        return algorithmMeters;
+    }
+
+    private static class AlgorithmMeters {
+
+        private final Timer compress;
+
+        private final Timer decompress;
+
+        private final DistributionSummary ratio;
+
+        private final DistributionSummary saved;
+
+        AlgorithmMeters(MeterRegistry registry, String algorithm) {
+
+            this.compress = Timer.builder(PREFIX + "time")
+                    .description("time to compress or decompress message body")
+                    .tag("algorithm", algorithm)
+                    .tag("operation", "compress")
+                    .register(registry);
+
+            this.decompress = Timer.builder(PREFIX + "time")
+                    .description("time to compress or decompress message body")
+                    .tag("algorithm", algorithm)
+                    .tag("operation", "decompress")
+                    .register(registry);
+
+            this.ratio = DistributionSummary.builder(PREFIX + "ratio")
+                    .description("compressed size divided by original size")
+                    .tag("algorithm", algorithm)
+                    .register(registry);
+
+            this.saved = DistributionSummary.builder(PREFIX + "saved")
+                    .description("bytes saved by compression")
+                    .baseUnit("bytes")
+                    .tag("algorithm", algorithm)
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.aihuishou.message.metrics;
+
+import com.aihuishou.message.consumer.container.MqListenerContainerMetrics;
+import com.aihuishou.message.consumer.container.MqListenerContainerMetricsFactory;
+import com.aihuishou.message.properties.ConsumerProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * micrometer meters of listener containers, tagged by topic, consumer group and tag
+ *
+ * @author js.xie
+ */
+public class MicrometerMqListenerContainerMetricsFactory implements MqListenerContainerMetricsFactory {
+
+    private static final String PREFIX = "ons.consumer.";
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    public MicrometerMqListenerContainerMetricsFactory(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public MqListenerContainerMetrics create(ConsumerProperties consumerProperties) {
+
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+
+        if (null == registry) {
+            return MqListenerContainerMetrics.NOOP;
+        }
+
+        Tags tags = Tags.of("topic", consumerProperties.getTopic(),
+                "consumerGroup", consumerProperties.getConsumerGroup(),
+                "tag", consumerProperties.getSelectorExpress());
+
+        return new MicrometerMqListenerContainerMetrics(registry, tags);
+    }
+
+    private static class MicrometerMqListenerContainerMetrics implements MqListenerContainerMetrics {
+
+        private final Timer deserialization;
+
+        private final Timer handler;
+
+        private final Counter success;
+
+        private final Counter retry;
+
+        private final Counter filtered;
+
+        private final Counter failure;
+
+        private final DistributionSummary reconsumeTimes;
+
+        private final AtomicInteger inFlight;
+
+        MicrometerMqListenerContainerMetrics(MeterRegistry registry, Tags tags) {
+
+            this.deserialization = Timer.builder(PREFIX + "deserialization")
+                    .description("time to convert ons message to handler argument")
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .register(registry);
+
+            this.handler = Timer.builder(PREFIX + "handler")
+                    .description("consumer handler latency, including additional blocking retries")
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .register(registry);
+
+            this.success = Counter.builder(PREFIX + "messages").tags(tags).tag("result", "success").register(registry);
+            this.failure = Counter.builder(PREFIX + "messages").tags(tags).tag("result", "failure").register(registry);
+            this.filtered = Counter.builder(PREFIX + "filtered").description("messages acknowledged without decoding, rejected by filter expression").tags(tags).register(registry);
+            this.retry = Counter.builder(PREFIX + "retries").description("additional retry attempts").tags(tags).register(registry);
+
+            this.reconsumeTimes = DistributionSummary.builder(PREFIX + "reconsume.times")
+                    .description("broker redelivery count of received messages")
+                    .tags(tags)
+                    .register(registry);
+
+            this.inFlight = registry.gauge(PREFIX + "in.flight", tags, new AtomicInteger());
+        }
+
+        @Override
+        public void onReceived(int times) {
+            inFlight.incrementAndGet();
+            reconsumeTimes.record(times);
+        }
+
+        @Override
+        public void onCompleted(int count, boolean succeeded) {
+            inFlight.addAndGet(-count);
+            (succeeded ? success : failure).increment(count);
+        }
+
+        @Override
+        public void onFiltered(int count) {
+            filtered.increment(count);
+        }
+
+        @Override
+        public void onRetry() {
+            retry.increment();
+        }
+
+        @Override
+        public void recordDeserialization(long nanos) {
+            deserialization.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void recordHandler(long nanos) {
+            handler.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
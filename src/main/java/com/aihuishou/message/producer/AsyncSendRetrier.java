@@ -0,0 +1,197 @@
+package com.aihuishou.message.producer;
+
+import com.aliyun.openservices.ons.api.Message;
+import com.aliyun.openservices.ons.api.OnExceptionContext;
+import com.aliyun.openservices.ons.api.Producer;
+import com.aliyun.openservices.ons.api.SendCallback;
+import com.aliyun.openservices.ons.api.SendResult;
+import com.aliyun.openservices.ons.api.exception.ONSClientException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * additional retry of asynchronous sends, driven by {@link SendCallback#onException}
+ * <note>
+ * a failed attempt is resent by a shared scheduler after exponential backoff, no thread waits in between. caller's
+ * callback is invoked once, on first success or when attempts are exhausted
+ * </note>
+ *
+ * @author js.xie
+ */
+@Slf4j
+public class AsyncSendRetrier {
+
+    private final int maxAttempts;
+
+    private final long initialInterval;
+
+    private final double multiplier;
+
+    private final long maxInterval;
+
+    private final ScheduledThreadPoolExecutor retryScheduler;
+
+    /**
+     * attempts waiting for their backoff, failed when closed
+     */
+    private final Set<Attempt> pending = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean closed;
+
+    public AsyncSendRetrier(int maxAttempts, long initialInterval, double multiplier, long maxInterval) {
+
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialInterval = Math.max(0, initialInterval);
+        this.multiplier = Math.max(1, multiplier);
+        this.maxInterval = Math.max(this.initialInterval, maxInterval);
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ons-producer-retry-");
+        threadFactory.setDaemon(true);
+
+        this.retryScheduler = new ScheduledThreadPoolExecutor(1, threadFactory);
+        this.retryScheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * send by {@link Producer#sendAsync}, exception of first attempt is thrown to caller
+     *
+     * @param sendCallback invoked once with final result
+     */
+    public void sendAsync(Producer producer, Message onsMsg, SendCallback sendCallback) {
+        new Attempt(onsMsg, callback -> producer.sendAsync(onsMsg, callback), sendCallback).send();
+    }
+
+    /**
+     * send by {@link BatchSender#sendAsync}, a failed batch is resent as a whole, exception of first attempt is thrown
+     * to caller
+     *
+     * @param sendCallback invoked once with final result of the batch
+     */
+    public void sendBatchAsync(BatchSender batchSender, List<Message> messages, SendCallback sendCallback) {
+        new Attempt(messages.get(0), callback -> batchSender.sendAsync(messages, callback), sendCallback).send();
+    }
+
+    /**
+     * stop scheduling, sends waiting for their backoff fail
+     */
+    public void close() {
+
+        closed = true;
+
+        retryScheduler.shutdownNow();
+
+        for (Attempt attempt : pending) {
+            if (pending.remove(attempt)) {
+                attempt.giveUp(new ONSClientException("producer retry is closed"));
+            }
+        }
+    }
+
+    private long backOff(int attempts) {
+
+        double interval = initialInterval * Math.pow(multiplier, attempts - 1);
+
+        return (long) Math.min(interval, maxInterval);
+    }
+
+    private final class Attempt implements SendCallback, Runnable {
+
+        /**
+         * message reported in logs and exception context, first one of a batch
+         */
+        private final Message onsMsg;
+
+        private final Consumer<SendCallback> sender;
+
+        private final SendCallback sendCallback;
+
+        private volatile int attempts;
+
+        private Attempt(Message onsMsg, Consumer<SendCallback> sender, SendCallback sendCallback) {
+            this.onsMsg = onsMsg;
+            this.sender = sender;
+            this.sendCallback = sendCallback;
+        }
+
+        private void send() {
+            attempts++;
+            sender.accept(this);
+        }
+
+        @Override
+        public void onSuccess(SendResult sendResult) {
+            sendCallback.onSuccess(sendResult);
+        }
+
+        @Override
+        public void onException(OnExceptionContext context) {
+
+            if (attempts >= maxAttempts || closed) {
+                sendCallback.onException(context);
+                return;
+            }
+
+            log.info("async send failed, retry. topic:{}, msgKey:{}, attempts:{}", onsMsg.getTopic(), onsMsg.getKey(), attempts);
+
+            pending.add(this);
+
+            try {
+
+                retryScheduler.schedule(this, backOff(attempts), TimeUnit.MILLISECONDS);
+
+            } catch (RejectedExecutionException e) {
+
+                // closed meanwhile
+                if (pending.remove(this)) {
+                    sendCallback.onException(context);
+                }
+            }
+        }
+
+        /**
+         * resend when backoff elapsed
+         */
+        @Override
+        public void run() {
+
+            if (!pending.remove(this)) {
+                return;
+            }
+
+            try {
+
+                send();
+
+            } catch (ONSClientException e) {
+
+                onException(exceptionContext(e));
+
+            } catch (RuntimeException e) {
+
+                onException(exceptionContext(new ONSClientException(e.getMessage(), e)));
+            }
+        }
+
+        private void giveUp(ONSClientException exception) {
+            sendCallback.onException(exceptionContext(exception));
+        }
+
+        private OnExceptionContext exceptionContext(ONSClientException exception) {
+
+            OnExceptionContext context = new OnExceptionContext();
+            context.setTopic(onsMsg.getTopic());
+            context.setMessageId(onsMsg.getMsgID());
+            context.setException(exception);
+
+            return context;
+        }
+    }
+}
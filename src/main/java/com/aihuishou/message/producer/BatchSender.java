@@ -0,0 +1,26 @@
+package com.aihuishou.message.producer;
+
+import com.aliyun.openservices.ons.api.Message;
+import com.aliyun.openservices.ons.api.SendCallback;
+
+import java.util.List;
+
+/**
+ * send messages of one topic to broker as one request
+ *
+ * @author js.xie
+ * @see RocketMQBatchSender
+ * @see ProducerBatchAccumulator
+ */
+@FunctionalInterface
+public interface BatchSender {
+
+    /**
+     * send messages asynchronously, they are stored together or not at all.
+     * msgId of every message is set once the batch is sent
+     *
+     * @param messages     messages of one topic
+     * @param sendCallback invoked once for the whole batch
+     */
+    void sendAsync(List<Message> messages, SendCallback sendCallback);
+}
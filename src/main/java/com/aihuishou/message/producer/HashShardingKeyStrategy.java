@@ -0,0 +1,53 @@
+package com.aihuishou.message.producer;
+
+import org.springframework.util.Assert;
+
+/**
+ * spreads business keys evenly over a fixed number of shards, sharding key is the shard index
+ * <note>
+ * keys are mixed by murmur3 finalizer before taking the shard, so sequential ids and keys sharing a prefix still
+ * spread. shards should be a multiple of queue count of the topic
+ * </note>
+ *
+ * @author js.xie
+ */
+public class HashShardingKeyStrategy implements ShardingKeyStrategy {
+
+    private final int shards;
+
+    private final String[] shardingKeys;
+
+    public HashShardingKeyStrategy(int shards) {
+
+        Assert.isTrue(shards > 0, "`shards` must be positive");
+
+        this.shards = shards;
+        this.shardingKeys = new String[shards];
+        for (int i = 0; i < shards; i++) {
+            shardingKeys[i] = String.valueOf(i);
+        }
+    }
+
+    @Override
+    public String shardingKeyOf(String key) {
+        return shardingKeys[shardOf(key)];
+    }
+
+    int shardOf(String key) {
+        return Math.floorMod(mix(key.hashCode()), shards);
+    }
+
+    static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "HashShardingKeyStrategy{shards=" + shards + "}";
+    }
+}
@@ -0,0 +1,76 @@
+package com.aihuishou.message.producer;
+
+import com.aihuishou.message.constants.InFlightOverflowPolicy;
+import com.aihuishou.message.properties.ProducerProperties;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * bounds asynchronous sends awaiting broker acknowledgement, so that a slow broker pushes back on senders instead of
+ * piling up messages in the client
+ *
+ * @author js.xie
+ */
+public class InFlightLimiter {
+
+    private final int maxInFlight;
+
+    private final Semaphore permits;
+
+    private final InFlightOverflowPolicy overflowPolicy;
+
+    private final long acquireTimeoutMillis;
+
+    public InFlightLimiter(ProducerProperties.Async async) {
+        this.maxInFlight = Math.max(1, async.getMaxInFlight());
+        this.permits = new Semaphore(maxInFlight);
+        this.overflowPolicy = async.getOverflowPolicy();
+        this.acquireTimeoutMillis = async.getAcquireTimeoutMillis();
+    }
+
+    /**
+     * take one permit, {@link #release()} it when the send completes
+     *
+     * @throws RejectedExecutionException max in flight reached and policy gave up
+     */
+    public void acquire() {
+
+        switch (overflowPolicy) {
+
+            case FAIL_FAST:
+                if (!permits.tryAcquire()) {
+                    throw new RejectedExecutionException("max in flight sends reached:" + maxInFlight);
+                }
+                return;
+
+            case TIMEOUT:
+                try {
+                    if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                        throw new RejectedExecutionException("max in flight sends reached:" + maxInFlight + ", waited " + acquireTimeoutMillis + "ms");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("interrupted while waiting for in flight sends", e);
+                }
+                return;
+
+            default:
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("interrupted while waiting for in flight sends", e);
+                }
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+}
@@ -2,9 +2,11 @@ package com.aihuishou.message.producer;
 
 import com.aihuishou.message.converter.MessageConverter;
 import com.aihuishou.message.properties.ProducerProperties;
+import com.aliyun.openservices.ons.api.OnExceptionContext;
 import com.aliyun.openservices.ons.api.Producer;
 import com.aliyun.openservices.ons.api.SendCallback;
 import com.aliyun.openservices.ons.api.SendResult;
+import com.aliyun.openservices.ons.api.order.OrderProducer;
 import com.aliyun.openservices.shade.com.alibaba.rocketmq.client.producer.DefaultMQProducer;
 import com.aliyun.openservices.shade.com.alibaba.rocketmq.common.message.MessageConst;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -28,9 +30,12 @@ import org.springframework.util.Assert;
 import org.springframework.util.MimeTypeUtils;
 import org.springframework.util.StringUtils;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * producer template send message
@@ -41,12 +46,33 @@ import java.util.Objects;
 public class MqTemplate extends AbstractMessageSendingTemplate<String> implements InitializingBean, DisposableBean {
 
     /**
-     * delegate producer send message
+     * delegate producer send message, a {@link ProducerPool} spreads sends across its members
      */
     @Getter
     @Setter
     private Producer producer;
 
+    /**
+     * delegate producer send ordered message, null means ordered sends are unavailable
+     */
+    @Getter
+    @Setter
+    @Nullable
+    private OrderProducer orderProducer;
+
+    /**
+     * maps business key of ordered message to sharding key
+     */
+    @Setter
+    private ShardingKeyStrategy shardingKeyStrategy = ShardingKeyStrategy.IDENTITY;
+
+    /**
+     * runs asynchronous ordered sends, null means they are unavailable
+     */
+    @Nullable
+    @Setter
+    private OrderedSendLanes orderedSendLanes;
+
     /**
      * convert ons message to spring message and so on
      */
@@ -59,6 +85,37 @@ public class MqTemplate extends AbstractMessageSendingTemplate<String> implement
     @Nullable
     private RetryTemplate producerRetryTemplate;
 
+    /**
+     * additional retry of asynchronous sends, built with producerRetryTemplate
+     */
+    @Nullable
+    private AsyncSendRetrier asyncSendRetrier;
+
+    /**
+     * groups batchSend messages per topic, null means send each right away
+     */
+    @Nullable
+    private ProducerBatchAccumulator batchAccumulator;
+
+    /**
+     * sends groups of batchSend messages
+     */
+    @Nullable
+    private BatchSender batchSender;
+
+    /**
+     * content type of payloads sent without `contentType` header
+     */
+    @Setter
+    private String defaultContentType = MimeTypeUtils.APPLICATION_JSON_VALUE;
+
+    /**
+     * bounds asynchronous sends awaiting broker acknowledgement, null means unbounded
+     */
+    @Nullable
+    @Setter
+    private InFlightLimiter inFlightLimiter;
+
     /**
      * <p> Send message in synchronous mode. This method returns only when the sending procedure totally completes.
      * Reliable synchronous transmission is used in extensive scenes, such as important notification messages, SMS
@@ -79,29 +136,171 @@ public class MqTemplate extends AbstractMessageSendingTemplate<String> implement
 
             com.aliyun.openservices.ons.api.Message onsMsg = messageConverter.toMessage(destination, message);
 
-            SendResult sendResult;
+            return doSyncSend(onsMsg);
 
-            // need additional retry
-            if (null != producerRetryTemplate) {
+        } catch (Throwable throwable) {
+            log.info("syncSend failed. destination:{}, message:{} ", destination, message);
+            throw new MessagingException(throwable.getMessage(), throwable);
 
-                sendResult = producerRetryTemplate.execute((RetryCallback<SendResult, Throwable>) context -> producer.send(onsMsg));
+        }
 
-            } else {
-                sendResult = producer.send(onsMsg);
-            }
+    }
 
-            log.info("sync send message msgId:{}", sendResult.getMessageId());
+    /**
+     * Send ons message as is in synchronous mode, eg resend one dead letter.
+     *
+     * @param onsMsg {@link com.aliyun.openservices.ons.api.Message}
+     * @return {@link SendResult}
+     */
+    public SendResult syncSend(com.aliyun.openservices.ons.api.Message onsMsg) {
+        Assert.notNull(onsMsg, "`onsMsg` cannot be null");
+
+        try {
 
-            return sendResult;
+            return doSyncSend(onsMsg);
 
         } catch (Throwable throwable) {
-            log.info("syncSend failed. destination:{}, message:{} ", destination, message);
+            log.info("syncSend failed. topic:{}, msgKey:{} ", onsMsg.getTopic(), onsMsg.getKey());
+            throw new MessagingException(throwable.getMessage(), throwable);
+        }
+    }
+
+    private SendResult doSyncSend(com.aliyun.openservices.ons.api.Message onsMsg) throws Throwable {
+
+        SendResult sendResult;
+
+        // need additional retry
+        if (null != producerRetryTemplate) {
+
+            sendResult = producerRetryTemplate.execute((RetryCallback<SendResult, Throwable>) context -> producer.send(onsMsg));
+
+        } else {
+            sendResult = producer.send(onsMsg);
+        }
+
+        log.info("sync send message msgId:{}", sendResult.getMessageId());
+
+        return sendResult;
+    }
+
+
+    /**
+     * <p> Send message in synchronous mode through ons order producer. Messages of one sharding key are stored in one
+     * queue in send order, ORDERLY consumers receive them in that order. </p>
+     *
+     * @param destination formats: `topicName:tags`
+     * @param message     {@link org.springframework.messaging.Message}
+     * @param shardingKey business key messages are ordered by, mapped by {@link ShardingKeyStrategy}
+     * @return {@link SendResult}
+     */
+    public SendResult syncSendOrderly(String destination, Message<?> message, String shardingKey) {
+        if (Objects.isNull(message) || Objects.isNull(message.getPayload())) {
+            log.info("syncSendOrderly failed. destination:{}, message is null ", destination);
+            throw new IllegalArgumentException("`message` and `message.payload` cannot be null");
+        }
+        Assert.hasText(shardingKey, "`shardingKey` cannot be empty");
+
+        try {
+
+            com.aliyun.openservices.ons.api.Message onsMsg = messageConverter.toMessage(destination, message);
+
+            return doSyncSendOrderly(onsMsg, shardingKeyStrategy.shardingKeyOf(shardingKey));
+
+        } catch (Throwable throwable) {
+            log.info("syncSendOrderly failed. destination:{}, shardingKey:{}, message:{} ", destination, shardingKey, message);
             throw new MessagingException(throwable.getMessage(), throwable);
+        }
+    }
+
+    /**
+     * Same to {@link #syncSendOrderly(String, Message, String)}
+     *
+     * @param destination formats: `topicName:tags`
+     * @param payload     the Object to use as payload
+     * @param shardingKey business key messages are ordered by
+     * @return {@link SendResult}
+     */
+    public SendResult syncSendOrderly(String destination, Object payload, String shardingKey) {
+        Message<?> message = this.doConvert(payload, null, null);
+        return syncSendOrderly(destination, message, shardingKey);
+    }
+
+    private SendResult doSyncSendOrderly(com.aliyun.openservices.ons.api.Message onsMsg, String shardingKey) throws Throwable {
+
+        Assert.state(null != orderProducer, "order producer is absent, enable spring.message.ons.producer.order");
+
+        SendResult sendResult;
+
+        // need additional retry, blocking retry keeps later messages of the key behind this one
+        if (null != producerRetryTemplate) {
+
+            sendResult = producerRetryTemplate.execute((RetryCallback<SendResult, Throwable>) context -> orderProducer.send(onsMsg, shardingKey));
+
+        } else {
+            sendResult = orderProducer.send(onsMsg, shardingKey);
+        }
+
+        log.info("sync send orderly message msgId:{}, shardingKey:{}", sendResult.getMessageId(), shardingKey);
+
+        return sendResult;
+    }
+
+    /**
+     * <p> Send message through ons order producer without waiting. Ons order producer only sends synchronously, the
+     * send runs on the lane of its sharding key, so that messages of one key are sent in call order. </p>
+     * <p>
+     * max in flight sends and additional retry apply as for {@link #sendAsync(String, Message)}
+     *
+     * @param destination formats: `topicName:tags`
+     * @param message     {@link org.springframework.messaging.Message}
+     * @param shardingKey business key messages are ordered by, mapped by {@link ShardingKeyStrategy}
+     * @return completes when broker acknowledged message
+     */
+    public CompletableFuture<SendResult> sendOrderlyAsync(String destination, Message<?> message, String shardingKey) {
+        if (Objects.isNull(message) || Objects.isNull(message.getPayload())) {
+            log.info("sendOrderlyAsync failed. destination:{}, message is null ", destination);
+            throw new IllegalArgumentException("`message` and `message.payload` cannot be null");
+        }
+        Assert.hasText(shardingKey, "`shardingKey` cannot be empty");
+        Assert.state(null != orderedSendLanes, "ordered send lanes are absent, enable spring.message.ons.producer.order");
+
+        com.aliyun.openservices.ons.api.Message onsMsg = messageConverter.toMessage(destination, message);
 
+        String mappedShardingKey = shardingKeyStrategy.shardingKeyOf(shardingKey);
+
+        try {
+            acquireInFlight();
+        } catch (RuntimeException e) {
+            log.info("sendOrderlyAsync failed. topic:{}, shardingKey:{} ", onsMsg.getTopic(), shardingKey);
+            CompletableFuture<SendResult> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
         }
 
+        return orderedSendLanes.submit(mappedShardingKey, () -> {
+
+            try {
+                return doSyncSendOrderly(onsMsg, mappedShardingKey);
+            } catch (Throwable throwable) {
+                log.info("sendOrderlyAsync failed. topic:{}, shardingKey:{} ", onsMsg.getTopic(), shardingKey);
+                throw new MessagingException(throwable.getMessage(), throwable);
+            }
+
+        }).whenComplete((sendResult, throwable) -> releaseInFlight());
     }
 
+    /**
+     * Same to {@link #sendOrderlyAsync(String, Message, String)}
+     *
+     * @param destination formats: `topicName:tags`
+     * @param payload     the Object to use as payload
+     * @param shardingKey business key messages are ordered by
+     * @return completes when broker acknowledged message
+     */
+    public CompletableFuture<SendResult> sendOrderlyAsync(String destination, Object payload, String shardingKey) {
+        Message<?> message = this.doConvert(payload, null, null);
+        return sendOrderlyAsync(destination, message, shardingKey);
+    }
 
     /**
      * Same to {@link #syncSend(String, Object)}
@@ -141,6 +340,9 @@ public class MqTemplate extends AbstractMessageSendingTemplate<String> implement
      * Similar to {@link #syncSend(String, Object)}, internal implementation would potentially retry up to {@link
      * DefaultMQProducer#getRetryTimesWhenSendAsyncFailed} times before claiming sending failure, which may yield
      * message duplication and application developers are the one to resolve this potential issue.
+     * <p>
+     * The caller only blocks while max in flight sends are awaiting acknowledgement, see {@link InFlightLimiter}.
+     * Additional retry resends from the send callback, see {@link AsyncSendRetrier}.
      *
      * @param destination  formats: `topicName:tags`
      * @param message      {@link org.springframework.messaging.Message}
@@ -156,28 +358,50 @@ public class MqTemplate extends AbstractMessageSendingTemplate<String> implement
 
             com.aliyun.openservices.ons.api.Message onsMsg = messageConverter.toMessage(destination, message);
 
+            doAsyncSend(onsMsg, sendCallback);
 
-            // need additional retry
-            if (null != producerRetryTemplate) {
+        } catch (Throwable throwable) {
+            log.info("asyncSend failed. destination:{}, message:{} ", destination, message);
+            throw new MessagingException(throwable.getMessage(), throwable);
+        }
+    }
 
-                producerRetryTemplate.execute((RetryCallback<Object, Throwable>) context -> {
-                    producer.sendAsync(onsMsg, sendCallback);
-                    return null;
-                });
 
-            } else {
+    void doAsyncSend(com.aliyun.openservices.ons.api.Message onsMsg, SendCallback sendCallback) {
+
+        acquireInFlight();
 
-                producer.send(onsMsg);
+        // permit is held across retries until the final result
+        SendCallback releasingCallback = new SendCallback() {
 
+            @Override
+            public void onSuccess(SendResult sendResult) {
+                releaseInFlight();
+                sendCallback.onSuccess(sendResult);
             }
 
-        } catch (Throwable throwable) {
-            log.info("asyncSend failed. destination:{}, message:{} ", destination, message);
-            throw new MessagingException(throwable.getMessage(), throwable);
+            @Override
+            public void onException(OnExceptionContext context) {
+                releaseInFlight();
+                sendCallback.onException(context);
+            }
+        };
+
+        try {
+
+            // need additional retry
+            if (null != asyncSendRetrier) {
+                asyncSendRetrier.sendAsync(producer, onsMsg, releasingCallback);
+            } else {
+                producer.sendAsync(onsMsg, releasingCallback);
+            }
+
+        } catch (RuntimeException e) {
+            releaseInFlight();
+            throw e;
         }
     }
 
-
     /**
      * Same to {@link #asyncSend(String, Object, SendCallback)} with send timeout specified in addition.
      *
@@ -225,26 +449,18 @@ public class MqTemplate extends AbstractMessageSendingTemplate<String> implement
 
             com.aliyun.openservices.ons.api.Message onsMsg = messageConverter.toMessage(destination, message);
 
-            // need additional retry
-            if (null != producerRetryTemplate) {
+            doSendOneWay(onsMsg);
 
-                producerRetryTemplate.execute((RetryCallback<Object, Throwable>) context -> {
-                    producer.sendOneway(onsMsg);
-                    return null;
-                });
-
-            } else {
-
-                producer.send(onsMsg);
-
-            }
-            producer.sendOneway(onsMsg);
         } catch (Throwable throwable) {
             log.info("sendOneWay failed. destination:{}, message:{} ", destination, message);
             throw new MessagingException(throwable.getMessage(), throwable);
         }
     }
 
+    void doSendOneWay(com.aliyun.openservices.ons.api.Message onsMsg) {
+        producer.sendOneway(onsMsg);
+    }
+
     /**
      * Same to {@link #sendOneWay(String, Message)}
      *
@@ -275,6 +491,215 @@ public class MqTemplate extends AbstractMessageSendingTemplate<String> implement
     }
 
 
+    /**
+     * <p> Send message asynchronously, the returned future completes from the send callback of the producer, no thread
+     * waits for the broker. </p>
+     * <p>
+     * Blocks, fails fast or times out by {@link ProducerProperties.Async#getOverflowPolicy()} when max in flight sends
+     * are awaiting acknowledgement, a rejected send completes the future exceptionally.
+     * additional retry resends failed attempts, the future completes with the final result
+     *
+     * @param destination formats: `topicName:tags`
+     * @param message     {@link org.springframework.messaging.Message}
+     * @return completes when broker acknowledged message
+     */
+    public CompletableFuture<SendResult> sendAsync(String destination, Message<?> message) {
+        if (Objects.isNull(message) || Objects.isNull(message.getPayload())) {
+            log.info("sendAsync failed. destination:{}, message is null ", destination);
+            throw new IllegalArgumentException("`message` and `message.payload` cannot be null");
+        }
+
+        return doSendAsync(messageConverter.toMessage(destination, message));
+    }
+
+    CompletableFuture<SendResult> doSendAsync(com.aliyun.openservices.ons.api.Message onsMsg) {
+
+        CompletableFuture<SendResult> future = new CompletableFuture<>();
+
+        try {
+
+            doAsyncSend(onsMsg, new SendCallback() {
+
+                @Override
+                public void onSuccess(SendResult sendResult) {
+                    future.complete(sendResult);
+                }
+
+                @Override
+                public void onException(OnExceptionContext context) {
+                    future.completeExceptionally(context.getException());
+                }
+            });
+
+        } catch (Throwable throwable) {
+            log.info("sendAsync failed. topic:{}, msgKey:{} ", onsMsg.getTopic(), onsMsg.getKey());
+            future.completeExceptionally(throwable);
+        }
+
+        return future;
+    }
+
+    /**
+     * Same to {@link #sendAsync(String, Message)}
+     *
+     * @param destination formats: `topicName:tags`
+     * @param key         message key
+     * @param payload     the Object to use as payload
+     * @return completes when broker acknowledged message
+     */
+    public CompletableFuture<SendResult> sendAsync(String destination, String key, Object payload) {
+        Map<String, Object> headers = new HashMap<>();
+        if (StringUtils.hasText(key)) {
+            headers.put(MessageConst.PROPERTY_KEYS, key);
+        }
+        Message<?> message = this.doConvert(payload, headers, null);
+        return sendAsync(destination, message);
+    }
+
+    /**
+     * Same to {@link #sendAsync(String, Message)}
+     *
+     * @param destination formats: `topicName:tags`
+     * @param payload     the Object to use as payload
+     * @return completes when broker acknowledged message
+     */
+    public CompletableFuture<SendResult> sendAsync(String destination, Object payload) {
+        return sendAsync(destination, null, payload);
+    }
+
+    private void acquireInFlight() {
+        if (null != inFlightLimiter) {
+            inFlightLimiter.acquire();
+        }
+    }
+
+    private void releaseInFlight() {
+        if (null != inFlightLimiter) {
+            inFlightLimiter.release();
+        }
+    }
+
+    /**
+     * @return asynchronous sends awaiting broker acknowledgement, 0 if unbounded
+     */
+    public int getInFlight() {
+        return null == inFlightLimiter ? 0 : inFlightLimiter.getInFlight();
+    }
+
+    /**
+     * <p> Send message through the batch accumulator, it is grouped with other messages of its topic and the group is
+     * sent as one broker request once it is full or has lingered long enough. Falls back to one asynchronous send when
+     * batching is disabled or message has a start deliver time. </p>
+     * <p>
+     * in-flight limit applies per message, additional retry resends the whole group
+     *
+     * @param destination formats: `topicName:tags`
+     * @param message     {@link org.springframework.messaging.Message}
+     * @return completes when broker acknowledged message
+     */
+    public CompletableFuture<SendResult> batchSend(String destination, Message<?> message) {
+        if (Objects.isNull(message) || Objects.isNull(message.getPayload())) {
+            log.info("batchSend failed. destination:{}, message is null ", destination);
+            throw new IllegalArgumentException("`message` and `message.payload` cannot be null");
+        }
+
+        return doBatchSend(messageConverter.toMessage(destination, message));
+    }
+
+    CompletableFuture<SendResult> doBatchSend(com.aliyun.openservices.ons.api.Message onsMsg) {
+
+        // rocketmq batches cannot carry delayed messages
+        if (null == batchAccumulator || onsMsg.getStartDeliverTime() > 0) {
+            return doSendAsync(onsMsg);
+        }
+
+        try {
+            acquireInFlight();
+        } catch (RuntimeException e) {
+            log.info("batchSend failed. topic:{}, msgKey:{} ", onsMsg.getTopic(), onsMsg.getKey());
+            CompletableFuture<SendResult> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        CompletableFuture<SendResult> future = batchAccumulator.append(onsMsg);
+
+        // permit is held until the batch of message is acknowledged
+        future.whenComplete((sendResult, throwable) -> releaseInFlight());
+
+        return future;
+    }
+
+    /**
+     * send one group of batchSend messages, with additional retry when enabled
+     */
+    void doSendBatch(List<com.aliyun.openservices.ons.api.Message> messages, SendCallback sendCallback) {
+
+        if (null != asyncSendRetrier) {
+            asyncSendRetrier.sendBatchAsync(batchSender, messages, sendCallback);
+        } else {
+            batchSender.sendAsync(messages, sendCallback);
+        }
+    }
+
+    /**
+     * Same to {@link #batchSend(String, Message)}
+     *
+     * @param destination formats: `topicName:tags`
+     * @param key         message key
+     * @param payload     the Object to use as payload
+     * @return completes when broker acknowledged message
+     */
+    public CompletableFuture<SendResult> batchSend(String destination, String key, Object payload) {
+        Map<String, Object> headers = new HashMap<>();
+        if (StringUtils.hasText(key)) {
+            headers.put(MessageConst.PROPERTY_KEYS, key);
+        }
+        Message<?> message = this.doConvert(payload, headers, null);
+        return batchSend(destination, message);
+    }
+
+    /**
+     * Same to {@link #batchSend(String, Message)}
+     *
+     * @param destination formats: `topicName:tags`
+     * @param payload     the Object to use as payload
+     * @return completes when broker acknowledged message
+     */
+    public CompletableFuture<SendResult> batchSend(String destination, Object payload) {
+        return batchSend(destination, null, payload);
+    }
+
+    /**
+     * publisher of payloads of one type to one destination, reuse it in hot loops
+     *
+     * @param destination formats: `topicName:tags`
+     * @param payloadType payload class
+     * @return thread safe publisher
+     */
+    public <T> TypedPublisher<T> publisher(String destination, Class<T> payloadType) {
+        return publisher(destination, payloadType, Collections.emptyMap());
+    }
+
+    /**
+     * Same to {@link #publisher(String, Class)} with headers of every message
+     *
+     * @param destination formats: `topicName:tags`
+     * @param payloadType payload class
+     * @param headers     static headers, `contentType` picks the codec
+     * @return thread safe publisher
+     */
+    public <T> TypedPublisher<T> publisher(String destination, Class<T> payloadType, Map<String, Object> headers) {
+
+        Assert.hasText(destination, "`destination` cannot be empty");
+        Assert.notNull(payloadType, "`payloadType` cannot be null");
+
+        Map<String, Object> boundHeaders = new HashMap<>(headers);
+        boundHeaders.putIfAbsent(MessageHeaders.CONTENT_TYPE, defaultContentType);
+
+        return new TypedPublisher<>(this, destination, messageConverter.writerFor(destination, payloadType, boundHeaders));
+    }
+
     @Override
     protected void doSend(String destination, Message<?> message) {
         SendResult sendResult = syncSend(destination, message);
@@ -282,12 +707,16 @@ public class MqTemplate extends AbstractMessageSendingTemplate<String> implement
     }
 
 
+    /**
+     * payload is kept as is when {@link MessageConverter#acceptsPayloadObject()}, the converter serializes it once
+     * into the message body. other converters get it converted to String first
+     */
     @Override
     protected Message<?> doConvert(Object payload, Map<String, Object> headers, MessagePostProcessor postProcessor) {
-        String content;
-        if (payload instanceof String) {
-            content = (String) payload;
-        } else {
+
+        Object content = payload;
+
+        if (!(payload instanceof String) && !messageConverter.acceptsPayloadObject()) {
             // if payload not as string, use objectMapper change it.
             try {
                 content = messageConverter.toString(payload);
@@ -301,7 +730,7 @@ public class MqTemplate extends AbstractMessageSendingTemplate<String> implement
         if (headers != null) {
             builder.copyHeaders(headers);
         }
-        builder.setHeaderIfAbsent(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_JSON_VALUE);
+        builder.setHeaderIfAbsent(MessageHeaders.CONTENT_TYPE, defaultContentType);
 
         Message<?> message = builder.build();
         if (postProcessor != null) {
@@ -313,22 +742,54 @@ public class MqTemplate extends AbstractMessageSendingTemplate<String> implement
     @Override
     public void afterPropertiesSet() throws Exception {
 
-        Assert.isTrue(producer != null, "Property 'producer' or 'orderProducer' is required");
+        Assert.isTrue(producer != null || orderProducer != null, "Property 'producer' or 'orderProducer' is required");
 
         if (null != producer) {
             producer.start();
         }
 
+        if (null != orderProducer) {
+            orderProducer.start();
+        }
+
 
     }
 
     @Override
     public void destroy() {
 
+        // hand lingering messages to the producer before it shuts down
+        if (Objects.nonNull(batchAccumulator)) {
+            batchAccumulator.close();
+        }
+
+        // sends waiting for their backoff fail instead of hanging
+        if (Objects.nonNull(asyncSendRetrier)) {
+            asyncSendRetrier.close();
+        }
+
         if (Objects.nonNull(producer)) {
             producer.shutdown();
         }
 
+        // queued ordered sends go out before order producer shuts down
+        if (Objects.nonNull(orderedSendLanes)) {
+            orderedSendLanes.close();
+        }
+
+        if (Objects.nonNull(orderProducer)) {
+            orderProducer.shutdown();
+        }
+
+    }
+
+    /**
+     * group batchSend messages per topic and send each group by batchSender
+     */
+    public void buildBatchAccumulator(BatchSender batchSender, ProducerProperties.Batch batch) {
+
+        this.batchSender = batchSender;
+        this.batchAccumulator = new ProducerBatchAccumulator(this::doSendBatch, batch);
     }
 
     @SuppressWarnings("all")
@@ -350,6 +811,9 @@ public class MqTemplate extends AbstractMessageSendingTemplate<String> implement
 
             producerRetryTemplate = rt;
 
+            asyncSendRetrier = new AsyncSendRetrier(retry.getMaxAttempts(), retry.getBackOffInitialInterval(),
+                    retry.getBackOffMultiplier(), retry.getBackOffMaxInterval());
+
         }
 
         // use default
@@ -367,6 +831,8 @@ public class MqTemplate extends AbstractMessageSendingTemplate<String> implement
             rt.setBackOffPolicy(backOffPolicy);
 
             producerRetryTemplate = rt;
+
+            asyncSendRetrier = new AsyncSendRetrier(3, 100, 2, 1000);
         }
 
     }
@@ -0,0 +1,131 @@
+package com.aihuishou.message.producer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * single thread lanes ordered sends run on, sends of one sharding key always take the same lane
+ * <note>
+ * ons order producer only sends synchronously, a lane runs the blocking sends of its keys one after another so that
+ * the caller does not wait and the order of each key is kept. sends still queued when close times out fail
+ * </note>
+ *
+ * @author js.xie
+ */
+@Slf4j
+public class OrderedSendLanes {
+
+    private final ExecutorService[] lanes;
+
+    private final long closeTimeoutMillis;
+
+    /**
+     * @param closeTimeoutMillis max milliseconds {@link #close()} waits for queued sends
+     */
+    public OrderedSendLanes(int laneCount, long closeTimeoutMillis) {
+
+        this.closeTimeoutMillis = Math.max(0, closeTimeoutMillis);
+
+        this.lanes = new ExecutorService[Math.max(1, laneCount)];
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ons-order-producer-");
+        threadFactory.setDaemon(true);
+
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        }
+    }
+
+    /**
+     * run send on the lane of sharding key
+     *
+     * @return completes with result of send
+     */
+    public <T> CompletableFuture<T> submit(String shardingKey, Supplier<T> send) {
+
+        ExecutorService lane = lanes[Math.floorMod(HashShardingKeyStrategy.mix(shardingKey.hashCode()), lanes.length)];
+
+        LaneTask<T> task = new LaneTask<>(send);
+
+        try {
+
+            lane.execute(task);
+
+        } catch (RejectedExecutionException e) {
+
+            task.future.completeExceptionally(new IllegalStateException("ordered send lanes are closed", e));
+        }
+
+        return task.future;
+    }
+
+    /**
+     * stop accepting sends, wait up to closeTimeoutMillis for queued ones, then fail those not started
+     *
+     * @return sends dropped
+     */
+    public int close() {
+
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+
+        long deadline = System.currentTimeMillis() + closeTimeoutMillis;
+
+        try {
+
+            for (ExecutorService lane : lanes) {
+                lane.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        int dropped = 0;
+
+        for (ExecutorService lane : lanes) {
+            for (Runnable queued : lane.shutdownNow()) {
+                ((LaneTask<?>) queued).future.completeExceptionally(new IllegalStateException("ordered send lanes are closed, send dropped"));
+                dropped++;
+            }
+        }
+
+        if (dropped > 0) {
+            log.warn("ordered send lanes not drained in {}ms, {} queued sends are dropped", closeTimeoutMillis, dropped);
+        }
+
+        return dropped;
+    }
+
+    /**
+     * one send and the future its caller holds
+     */
+    private static final class LaneTask<T> implements Runnable {
+
+        private final Supplier<T> send;
+
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private LaneTask(Supplier<T> send) {
+            this.send = send;
+        }
+
+        @Override
+        public void run() {
+            try {
+                future.complete(send.get());
+            } catch (Throwable throwable) {
+                future.completeExceptionally(throwable);
+            }
+        }
+    }
+}
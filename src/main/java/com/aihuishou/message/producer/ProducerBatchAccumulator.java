@@ -0,0 +1,308 @@
+package com.aihuishou.message.producer;
+
+import com.aihuishou.message.properties.ProducerProperties;
+import com.aliyun.openservices.ons.api.Message;
+import com.aliyun.openservices.ons.api.OnExceptionContext;
+import com.aliyun.openservices.ons.api.SendCallback;
+import com.aliyun.openservices.ons.api.SendResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * groups messages per topic and flushes a group when it reaches maxMessages, maxBytes or lingerMillis
+ * <note>
+ * a flush hands the group to {@link BatchSender} as one broker request, each caller's future completes with the
+ * result of its own message once the batch is acknowledged, or fails with the batch. message size is estimated from
+ * body and properties, a group is flushed before a message would take it over maxBytes, a message over maxBytes on
+ * its own is sent alone
+ * </note>
+ *
+ * @author js.xie
+ */
+@Slf4j
+public class ProducerBatchAccumulator {
+
+    /**
+     * bytes of one message in a batch request besides body and properties: its length, magic, crc, flag, body
+     * length and properties length fields, plus system properties added by the client, eg unique id
+     */
+    private static final int MESSAGE_OVERHEAD = 22 + 64;
+
+    /**
+     * separators of one property
+     */
+    private static final int PROPERTY_OVERHEAD = 2;
+
+    private final BatchSender batchSender;
+
+    private final int maxMessages;
+
+    private final long maxBytes;
+
+    private final long lingerMillis;
+
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+
+    private final ScheduledThreadPoolExecutor lingerScheduler;
+
+    private volatile boolean closed;
+
+    public ProducerBatchAccumulator(BatchSender batchSender, ProducerProperties.Batch batch) {
+
+        this.batchSender = batchSender;
+        this.maxMessages = Math.max(1, batch.getMaxMessages());
+        this.maxBytes = Math.max(1, batch.getMaxBytes());
+        this.lingerMillis = Math.max(0, batch.getLingerMillis());
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ons-producer-linger-");
+        threadFactory.setDaemon(true);
+
+        this.lingerScheduler = new ScheduledThreadPoolExecutor(1, threadFactory);
+        this.lingerScheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * add message to the group of its topic
+     *
+     * @return completes when broker acknowledged message
+     */
+    public CompletableFuture<SendResult> append(Message onsMsg) {
+
+        CompletableFuture<SendResult> future = new CompletableFuture<>();
+
+        if (closed) {
+            future.completeExceptionally(new IllegalStateException("producer batch accumulator is closed"));
+            return future;
+        }
+
+        long size = sizeOf(onsMsg);
+
+        Batch previous = null;
+        Batch full = null;
+
+        Batch batch = batches.computeIfAbsent(onsMsg.getTopic(), this::newBatch);
+
+        synchronized (batch) {
+
+            // message would take group over maxBytes, send group without it first
+            if (!batch.messages.isEmpty() && batch.bytes + size > maxBytes) {
+                previous = detach(batch);
+            }
+
+            boolean lingering = batch.add(onsMsg, future, size);
+
+            if (!lingering || batch.messages.size() >= maxMessages || batch.bytes >= maxBytes) {
+                full = detach(batch);
+            }
+        }
+
+        if (null != previous) {
+            send(previous);
+        }
+
+        if (null != full) {
+            send(full);
+        }
+
+        return future;
+    }
+
+    /**
+     * send every group now
+     */
+    public void flush() {
+
+        for (Batch batch : batches.values()) {
+
+            Batch detached;
+
+            synchronized (batch) {
+                detached = detach(batch);
+            }
+
+            if (null != detached) {
+                send(detached);
+            }
+        }
+    }
+
+    /**
+     * flush and stop linger timer, messages appended afterwards fail
+     */
+    public void close() {
+
+        closed = true;
+
+        flush();
+
+        lingerScheduler.shutdownNow();
+    }
+
+    /**
+     * estimated bytes of message in a batch request
+     */
+    static long sizeOf(Message onsMsg) {
+
+        long size = MESSAGE_OVERHEAD + lengthOf(onsMsg.getTopic()) + (null == onsMsg.getBody() ? 0 : onsMsg.getBody().length);
+
+        size += PROPERTY_OVERHEAD + lengthOf(onsMsg.getTag()) + PROPERTY_OVERHEAD + lengthOf(onsMsg.getKey());
+
+        if (null != onsMsg.getUserProperties()) {
+            for (Map.Entry<Object, Object> property : onsMsg.getUserProperties().entrySet()) {
+                size += PROPERTY_OVERHEAD + lengthOf(String.valueOf(property.getKey())) + lengthOf(String.valueOf(property.getValue()));
+            }
+        }
+
+        return size;
+    }
+
+    private static int lengthOf(String value) {
+        return null == value ? 0 : value.length();
+    }
+
+    private Batch newBatch(String topic) {
+        return new Batch(topic);
+    }
+
+    /**
+     * take messages out of batch, must hold batch lock
+     *
+     * @return messages to send, null if empty
+     */
+    private Batch detach(Batch batch) {
+
+        if (batch.messages.isEmpty()) {
+            return null;
+        }
+
+        Batch detached = new Batch(batch.topic);
+        detached.messages.addAll(batch.messages);
+        detached.futures.addAll(batch.futures);
+
+        batch.reset();
+
+        return detached;
+    }
+
+    private void send(Batch batch) {
+
+        try {
+
+            batchSender.sendAsync(batch.messages, new SendCallback() {
+
+                @Override
+                public void onSuccess(SendResult batchResult) {
+
+                    for (int i = 0; i < batch.messages.size(); i++) {
+
+                        SendResult sendResult = new SendResult();
+                        sendResult.setTopic(batchResult.getTopic());
+                        sendResult.setMessageId(batch.messages.get(i).getMsgID());
+
+                        batch.futures.get(i).complete(sendResult);
+                    }
+                }
+
+                @Override
+                public void onException(OnExceptionContext context) {
+                    batch.fail(context.getException());
+                }
+            });
+
+        } catch (Throwable throwable) {
+            log.info("batch send failed. topic:{}, messages:{} ", batch.topic, batch.messages.size());
+            batch.fail(throwable);
+        }
+    }
+
+    private final class Batch {
+
+        private final String topic;
+
+        private final List<Message> messages = new ArrayList<>();
+
+        private final List<CompletableFuture<SendResult>> futures = new ArrayList<>();
+
+        private long bytes;
+
+        /**
+         * increases on every reset, a linger timer only flushes the generation it was scheduled for
+         */
+        private long generation;
+
+        private boolean lingering;
+
+        private Batch(String topic) {
+            this.topic = topic;
+        }
+
+        /**
+         * @return false if no linger timer will flush this batch, it must be sent now
+         */
+        private boolean add(Message onsMsg, CompletableFuture<SendResult> future, long size) {
+
+            if (messages.isEmpty()) {
+                lingering = lingerMillis > 0 && scheduleLinger(generation);
+            }
+
+            messages.add(onsMsg);
+            futures.add(future);
+            bytes += size;
+
+            return lingering;
+        }
+
+        private void fail(Throwable throwable) {
+            for (CompletableFuture<SendResult> future : futures) {
+                future.completeExceptionally(throwable);
+            }
+        }
+
+        private void reset() {
+            messages.clear();
+            futures.clear();
+            bytes = 0;
+            generation++;
+        }
+
+        private boolean scheduleLinger(long scheduledGeneration) {
+
+            if (closed) {
+                return false;
+            }
+
+            try {
+                lingerScheduler.schedule(() -> lingerExpired(scheduledGeneration), lingerMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // closed meanwhile
+                return false;
+            }
+
+            return true;
+        }
+
+        private void lingerExpired(long scheduledGeneration) {
+
+            Batch detached = null;
+
+            synchronized (this) {
+                if (generation == scheduledGeneration) {
+                    detached = detach(this);
+                }
+            }
+
+            if (null != detached) {
+                send(detached);
+            }
+        }
+    }
+}
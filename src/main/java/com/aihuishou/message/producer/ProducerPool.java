@@ -0,0 +1,324 @@
+package com.aihuishou.message.producer;
+
+import com.aihuishou.message.constants.ProducerSelection;
+import com.aihuishou.message.properties.ProducerProperties;
+import com.aliyun.openservices.ons.api.Message;
+import com.aliyun.openservices.ons.api.OnExceptionContext;
+import com.aliyun.openservices.ons.api.Producer;
+import com.aliyun.openservices.ons.api.SendCallback;
+import com.aliyun.openservices.ons.api.SendResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ons producers used as one, each send goes to one member picked by {@link ProducerSelection}
+ * <note>
+ * one producer client serializes sends on its own locks and network channel, members with distinct instance names do
+ * not share them. a member failing failureThreshold sends in a row is skipped for unhealthyMillis, when every member is
+ * unhealthy sends go to the selected member anyway
+ * </note>
+ *
+ * @author js.xie
+ */
+@Slf4j
+public class ProducerPool implements Producer {
+
+    private final Member[] members;
+
+    private final ProducerSelection selection;
+
+    private final int failureThreshold;
+
+    private final long unhealthyMillis;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ProducerPool(List<Producer> producers, ProducerProperties.Pool pool) {
+
+        Assert.notEmpty(producers, "`producers` cannot be empty");
+
+        this.members = new Member[producers.size()];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = new Member(i, producers.get(i));
+        }
+
+        this.selection = pool.getSelection();
+        this.failureThreshold = Math.max(1, pool.getFailureThreshold());
+        this.unhealthyMillis = Math.max(0, pool.getUnhealthyMillis());
+    }
+
+    /**
+     * @return members in creation order
+     */
+    public List<Member> getMembers() {
+
+        List<Member> list = new ArrayList<>(members.length);
+        Collections.addAll(list, members);
+
+        return list;
+    }
+
+    public int size() {
+        return members.length;
+    }
+
+    @Override
+    public SendResult send(Message message) {
+
+        Member member = select();
+
+        member.inFlight.incrementAndGet();
+
+        boolean success = false;
+
+        try {
+
+            SendResult sendResult = member.producer.send(message);
+            success = true;
+
+            return sendResult;
+
+        } finally {
+            member.complete(success);
+        }
+    }
+
+    @Override
+    public void sendOneway(Message message) {
+
+        Member member = select();
+
+        member.inFlight.incrementAndGet();
+
+        boolean success = false;
+
+        try {
+
+            member.producer.sendOneway(message);
+            success = true;
+
+        } finally {
+            member.complete(success);
+        }
+    }
+
+    @Override
+    public void sendAsync(Message message, SendCallback sendCallback) {
+
+        Member member = select();
+
+        member.inFlight.incrementAndGet();
+
+        try {
+
+            member.producer.sendAsync(message, new SendCallback() {
+
+                @Override
+                public void onSuccess(SendResult sendResult) {
+                    member.complete(true);
+                    sendCallback.onSuccess(sendResult);
+                }
+
+                @Override
+                public void onException(OnExceptionContext context) {
+                    member.complete(false);
+                    sendCallback.onException(context);
+                }
+            });
+
+        } catch (RuntimeException e) {
+            member.complete(false);
+            throw e;
+        }
+    }
+
+    @Override
+    public void setCallbackExecutor(ExecutorService callbackExecutor) {
+        for (Member member : members) {
+            member.producer.setCallbackExecutor(callbackExecutor);
+        }
+    }
+
+    @Override
+    public boolean isStarted() {
+
+        for (Member member : members) {
+            if (!member.producer.isStarted()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean isClosed() {
+
+        for (Member member : members) {
+            if (!member.producer.isClosed()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public void start() {
+        for (Member member : members) {
+            member.producer.start();
+        }
+    }
+
+    @Override
+    public void updateCredential(Properties credentialProperties) {
+        for (Member member : members) {
+            member.producer.updateCredential(credentialProperties);
+        }
+    }
+
+    /**
+     * shutdown every member, one failing does not keep the others open
+     */
+    @Override
+    public void shutdown() {
+
+        for (Member member : members) {
+
+            try {
+                member.producer.shutdown();
+            } catch (RuntimeException e) {
+                log.warn("shutdown producer pool member:{} failed", member.index, e);
+            }
+        }
+    }
+
+    private Member select() {
+
+        if (members.length == 1) {
+            return members[0];
+        }
+
+        long now = System.currentTimeMillis();
+
+        if (ProducerSelection.LEAST_IN_FLIGHT == selection) {
+            return leastInFlight(now);
+        }
+
+        int start = (next.getAndIncrement() & Integer.MAX_VALUE) % members.length;
+
+        for (int i = 0; i < members.length; i++) {
+
+            Member member = members[(start + i) % members.length];
+
+            if (member.isHealthy(now)) {
+                return member;
+            }
+        }
+
+        return members[start];
+    }
+
+    private Member leastInFlight(long now) {
+
+        Member least = null;
+        Member leastOfAll = null;
+
+        for (Member member : members) {
+
+            int inFlight = member.inFlight.get();
+
+            if (null == leastOfAll || inFlight < leastOfAll.inFlight.get()) {
+                leastOfAll = member;
+            }
+
+            if (member.isHealthy(now) && (null == least || inFlight < least.inFlight.get())) {
+                least = member;
+            }
+        }
+
+        return null != least ? least : leastOfAll;
+    }
+
+    @Override
+    public String toString() {
+        return "ProducerPool{size=" + members.length + ", selection=" + selection + "}";
+    }
+
+    /**
+     * one producer of pool and its health
+     */
+    public final class Member {
+
+        private final int index;
+
+        private final Producer producer;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+        private volatile long unhealthyUntil;
+
+        private Member(int index, Producer producer) {
+            this.index = index;
+            this.producer = producer;
+        }
+
+        private void complete(boolean success) {
+
+            inFlight.decrementAndGet();
+
+            if (success) {
+
+                if (consecutiveFailures.get() != 0) {
+                    consecutiveFailures.set(0);
+                }
+
+                return;
+            }
+
+            if (consecutiveFailures.incrementAndGet() >= failureThreshold && isHealthy(System.currentTimeMillis())) {
+
+                unhealthyUntil = System.currentTimeMillis() + unhealthyMillis;
+                consecutiveFailures.set(0);
+
+                log.warn("producer pool member:{} failed {} sends in a row, skip it for {}ms", index, failureThreshold, unhealthyMillis);
+            }
+        }
+
+        public boolean isHealthy() {
+            return isHealthy(System.currentTimeMillis());
+        }
+
+        private boolean isHealthy(long now) {
+            return now >= unhealthyUntil;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public Producer getProducer() {
+            return producer;
+        }
+
+        /**
+         * @return sends awaiting broker acknowledgement
+         */
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        public int getConsecutiveFailures() {
+            return consecutiveFailures.get();
+        }
+    }
+}
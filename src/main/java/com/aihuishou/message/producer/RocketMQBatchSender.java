@@ -0,0 +1,126 @@
+package com.aihuishou.message.producer;
+
+import com.aliyun.openservices.ons.api.Message;
+import com.aliyun.openservices.ons.api.OnExceptionContext;
+import com.aliyun.openservices.ons.api.Producer;
+import com.aliyun.openservices.ons.api.SendCallback;
+import com.aliyun.openservices.ons.api.SendResult;
+import com.aliyun.openservices.ons.api.exception.ONSClientException;
+import com.aliyun.openservices.ons.api.impl.rocketmq.ONSUtil;
+import com.aliyun.openservices.ons.api.impl.rocketmq.ProducerImpl;
+import com.aliyun.openservices.shade.com.alibaba.rocketmq.client.producer.DefaultMQProducer;
+import com.aliyun.openservices.shade.com.alibaba.rocketmq.common.message.MessageClientIDSetter;
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * batch send by the rocketmq client inside ons producers, {@link DefaultMQProducer#send(java.util.Collection,
+ * com.aliyun.openservices.shade.com.alibaba.rocketmq.client.producer.SendCallback, long)}
+ * <note>
+ * ons {@link Producer} has no batch send, its rocketmq client has. a batch skips ons send interceptors and message
+ * trace, and is spread across members of a {@link ProducerPool} round robin, regardless of their health
+ * </note>
+ *
+ * @author js.xie
+ */
+public class RocketMQBatchSender implements BatchSender {
+
+    private final DefaultMQProducer[] producers;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private RocketMQBatchSender(List<DefaultMQProducer> producers) {
+        this.producers = producers.toArray(new DefaultMQProducer[0]);
+    }
+
+    /**
+     * @param producer ons producer or a {@link ProducerPool} of them
+     * @return null if producer does not wrap a rocketmq client
+     */
+    @Nullable
+    public static RocketMQBatchSender of(Producer producer) {
+
+        List<Producer> members = new ArrayList<>();
+
+        if (producer instanceof ProducerPool) {
+            for (ProducerPool.Member member : ((ProducerPool) producer).getMembers()) {
+                members.add(member.getProducer());
+            }
+        } else {
+            members.add(producer);
+        }
+
+        List<DefaultMQProducer> producers = new ArrayList<>(members.size());
+
+        for (Producer member : members) {
+
+            if (!(member instanceof ProducerImpl)) {
+                return null;
+            }
+
+            producers.add(((ProducerImpl) member).getDefaultMQProducer());
+        }
+
+        return new RocketMQBatchSender(producers);
+    }
+
+    @Override
+    public void sendAsync(List<Message> messages, SendCallback sendCallback) {
+
+        String topic = messages.get(0).getTopic();
+
+        List<com.aliyun.openservices.shade.com.alibaba.rocketmq.common.message.Message> rmqMessages = new ArrayList<>(messages.size());
+
+        for (Message onsMsg : messages) {
+
+            com.aliyun.openservices.shade.com.alibaba.rocketmq.common.message.Message rmqMsg = ONSUtil.msgConvert(onsMsg);
+
+            // same id on every attempt of the batch
+            MessageClientIDSetter.setUniqID(rmqMsg);
+            onsMsg.setMsgID(MessageClientIDSetter.getUniqID(rmqMsg));
+
+            rmqMessages.add(rmqMsg);
+        }
+
+        DefaultMQProducer producer = producers[Math.abs(next.getAndIncrement() % producers.length)];
+
+        try {
+
+            producer.send(rmqMessages, new com.aliyun.openservices.shade.com.alibaba.rocketmq.client.producer.SendCallback() {
+
+                @Override
+                public void onSuccess(com.aliyun.openservices.shade.com.alibaba.rocketmq.client.producer.SendResult rmqResult) {
+
+                    SendResult sendResult = new SendResult();
+                    sendResult.setTopic(topic);
+                    sendResult.setMessageId(rmqResult.getMsgId());
+
+                    sendCallback.onSuccess(sendResult);
+                }
+
+                @Override
+                public void onException(Throwable throwable) {
+
+                    OnExceptionContext context = new OnExceptionContext();
+                    context.setTopic(topic);
+                    context.setMessageId(messages.get(0).getMsgID());
+                    context.setException(new ONSClientException("batch send failed. topic:" + topic, throwable));
+
+                    sendCallback.onException(context);
+                }
+            }, producer.getSendMsgTimeout());
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new ONSClientException("batch send interrupted. topic:" + topic, e);
+
+        } catch (Exception e) {
+
+            throw new ONSClientException("batch send failed. topic:" + topic, e);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.aihuishou.message.producer;
+
+/**
+ * maps business key of an ordered message to sharding key handed to ons order producer
+ * <note>
+ * ons picks the queue by hash of sharding key, keys with skewed hashes pile up on a few queues. equal keys must map to
+ * equal sharding keys, otherwise messages of one key lose their order
+ * </note>
+ *
+ * @author js.xie
+ */
+@FunctionalInterface
+public interface ShardingKeyStrategy {
+
+    /**
+     * business key is the sharding key
+     */
+    ShardingKeyStrategy IDENTITY = key -> key;
+
+    /**
+     * @param key business key, eg order id
+     * @return sharding key
+     */
+    String shardingKeyOf(String key);
+}
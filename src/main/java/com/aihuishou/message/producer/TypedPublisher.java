@@ -0,0 +1,121 @@
+package com.aihuishou.message.producer;
+
+import com.aihuishou.message.converter.BoundMessageWriter;
+import com.aliyun.openservices.ons.api.Message;
+import com.aliyun.openservices.ons.api.SendCallback;
+import com.aliyun.openservices.ons.api.SendResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.MessagingException;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * sends payloads of one type to one destination through {@link MqTemplate}
+ * <note>
+ * topic, tags, static headers and serializer are resolved when the publisher is created, sending only serializes the
+ * payload. thread safe, create once and reuse
+ * </note>
+ *
+ * @author js.xie
+ * @see MqTemplate#publisher(String, Class)
+ */
+@Slf4j
+public class TypedPublisher<T> {
+
+    private final MqTemplate mqTemplate;
+
+    private final String destination;
+
+    private final BoundMessageWriter<T> writer;
+
+    TypedPublisher(MqTemplate mqTemplate, String destination, BoundMessageWriter<T> writer) {
+        this.mqTemplate = mqTemplate;
+        this.destination = destination;
+        this.writer = writer;
+    }
+
+    public SendResult syncSend(T payload) {
+        return syncSend(null, payload);
+    }
+
+    /**
+     * @param key     message key, null means none
+     * @param payload not null
+     * @return {@link SendResult}
+     */
+    public SendResult syncSend(@Nullable String key, T payload) {
+        return mqTemplate.syncSend(write(key, payload));
+    }
+
+    public void asyncSend(T payload, SendCallback sendCallback) {
+        asyncSend(null, payload, sendCallback);
+    }
+
+    public void asyncSend(@Nullable String key, T payload, SendCallback sendCallback) {
+
+        Message onsMsg = write(key, payload);
+
+        try {
+            mqTemplate.doAsyncSend(onsMsg, sendCallback);
+        } catch (Throwable throwable) {
+            log.info("asyncSend failed. destination:{}, msgKey:{} ", destination, key);
+            throw new MessagingException(throwable.getMessage(), throwable);
+        }
+    }
+
+    /**
+     * @see MqTemplate#sendAsync(String, org.springframework.messaging.Message)
+     */
+    public CompletableFuture<SendResult> sendAsync(T payload) {
+        return sendAsync(null, payload);
+    }
+
+    public CompletableFuture<SendResult> sendAsync(@Nullable String key, T payload) {
+        return mqTemplate.doSendAsync(write(key, payload));
+    }
+
+    /**
+     * @see MqTemplate#batchSend(String, org.springframework.messaging.Message)
+     */
+    public CompletableFuture<SendResult> batchSend(T payload) {
+        return batchSend(null, payload);
+    }
+
+    public CompletableFuture<SendResult> batchSend(@Nullable String key, T payload) {
+        return mqTemplate.doBatchSend(write(key, payload));
+    }
+
+    public void sendOneWay(T payload) {
+        sendOneWay(null, payload);
+    }
+
+    public void sendOneWay(@Nullable String key, T payload) {
+
+        Message onsMsg = write(key, payload);
+
+        try {
+            mqTemplate.doSendOneWay(onsMsg);
+        } catch (Throwable throwable) {
+            log.info("sendOneWay failed. destination:{}, msgKey:{} ", destination, key);
+            throw new MessagingException(throwable.getMessage(), throwable);
+        }
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    private Message write(@Nullable String key, T payload) {
+
+        Assert.notNull(payload, "`payload` cannot be null");
+
+        return writer.write(payload, key);
+    }
+
+    @Override
+    public String toString() {
+        return "TypedPublisher{destination=" + destination + "}";
+    }
+}
@@ -0,0 +1,121 @@
+package com.aihuishou.message.properties;
+
+import com.aihuishou.message.constants.ErrorOverflowPolicy;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
+
+/**
+ * settings shared by all listener containers
+ *
+ * @author js.xie
+ */
+@ConfigurationProperties(prefix = "spring.message.ons.consumer")
+@Data
+public class ConsumerContainerProperties {
+
+    /**
+     * error message handling
+     */
+    @NestedConfigurationProperty
+    private ErrorHandler errorHandler = new ErrorHandler();
+
+    /**
+     * local dead letter journal
+     */
+    @NestedConfigurationProperty
+    private DeadLetter deadLetter = new DeadLetter();
+
+    /**
+     * listener container startup and shutdown
+     */
+    @NestedConfigurationProperty
+    private Lifecycle lifecycle = new Lifecycle();
+
+    @Data
+    public static class ErrorHandler {
+
+        /**
+         * max failed messages waiting for error message handlers
+         */
+        private int queueCapacity = 1024;
+
+        /**
+         * max failed messages handed to error message handlers at once
+         */
+        private int batchSize = 100;
+
+        /**
+         * max milliseconds to wait for a batch to fill up
+         */
+        private long lingerMillis = 1000;
+
+        /**
+         * what to do with a failed message when queue is full
+         */
+        private ErrorOverflowPolicy overflowPolicy = ErrorOverflowPolicy.DISCARD_OLDEST;
+
+        /**
+         * max milliseconds to wait for queued failed messages on shutdown
+         */
+        private long shutdownTimeoutMillis = 5000;
+    }
+
+    @Data
+    public static class DeadLetter {
+
+        /**
+         * whether record error messages in local dead letter journal
+         */
+        private boolean enabled = false;
+
+        /**
+         * journal directory
+         */
+        private String dir = System.getProperty("user.home") + "/.ons/dead-letter";
+
+        /**
+         * bytes of one journal segment
+         */
+        private int segmentSize = 64 * 1024 * 1024;
+
+        /**
+         * milliseconds between forces of journal to disk, 0 leaves it to the operating system
+         */
+        private long flushIntervalMillis = 1000;
+
+        /**
+         * max msgIds remembered to record a message once
+         */
+        private int msgIdCapacity = 100000;
+    }
+
+    @Data
+    public static class Lifecycle {
+
+        /**
+         * lifecycle phase of listener containers, they start after and stop before beans of lower phases
+         */
+        private int phase = Integer.MAX_VALUE - 1000;
+
+        /**
+         * max listener containers started or stopped at the same time
+         */
+        private int startupThreads = 8;
+
+        /**
+         * max milliseconds to wait for all listener containers to start or stop
+         */
+        private long timeoutMillis = 60000;
+
+        /**
+         * whether defer start until the application is ready, so that no message arrives before runners have run
+         */
+        private boolean startOnApplicationReady = false;
+
+        /**
+         * max milliseconds a stopping container waits for messages in flight, keep it below timeoutMillis
+         */
+        private long drainTimeoutMillis = 30000;
+    }
+}
@@ -1,6 +1,8 @@
 package com.aihuishou.message.properties;
 
 import com.aihuishou.message.constants.ConsumeMode;
+import com.aihuishou.message.constants.DedupKey;
+import com.aihuishou.message.constants.RetryMode;
 import com.aihuishou.message.constants.SelectorType;
 import com.aihuishou.message.error.ErrorMessageHandlerStrategy;
 import com.aliyun.openservices.shade.com.alibaba.rocketmq.common.protocol.heartbeat.MessageModel;
@@ -53,6 +55,26 @@ public class ConsumerProperties {
      */
     private Integer consumeThreadNum;
 
+    /**
+     * user property whose value is the ordering key when consumeMode is KEY_ORDERED, empty means message key
+     */
+    private String orderKeyProperty;
+
+    /**
+     * spel expression evaluated against tag, keys and user properties before decoding, empty means consume all
+     */
+    private String filterExpression;
+
+    /**
+     * max messages of one batch when consumeMode is BATCH or KEY_ORDERED
+     */
+    private Integer consumeBatchMaxSize;
+
+    /**
+     * max seconds to wait for a batch to fill up when consumeMode is BATCH
+     */
+    private Integer batchMaxAwaitSeconds;
+
     /**
      * when consume failed times more than consumeFailedNum, will invoke error handler
      *
@@ -70,6 +92,21 @@ public class ConsumerProperties {
      */
     private Retry retry;
 
+    /**
+     * duplicate delivery filter, null means disabled
+     */
+    private Dedup dedup;
+
+    /**
+     * adaptive concurrency, null means fixed consumeThreadNum
+     */
+    private Concurrency concurrency;
+
+    /**
+     * circuit breaker, null means disabled
+     */
+    private CircuitBreaker circuitBreaker;
+
     @Data
     public static class Retry {
 
@@ -104,6 +141,89 @@ public class ConsumerProperties {
          * it as @Bean inside your application configuration.
          */
         double backOffMultiplier = 2.0;
+
+        /**
+         * Whether back off sleeps on the consume thread or attempts are scheduled.
+         * Default: BLOCKING.
+         */
+        RetryMode mode = RetryMode.BLOCKING;
+    }
+
+    @Data
+    public static class Dedup {
+
+        /**
+         * message attribute identifies duplicate deliveries
+         */
+        DedupKey key = DedupKey.MESSAGE_ID;
+
+        /**
+         * max remembered messages
+         */
+        int capacity = 65536;
+
+        /**
+         * how long one consumed message is remembered
+         */
+        int ttlSeconds = 600;
+
+        /**
+         * directory of memory mapped journal, null means memory only
+         */
+        String journalDir;
+    }
+
+    @Data
+    public static class Concurrency {
+
+        /**
+         * lower bound of concurrency
+         */
+        int minConcurrency = 1;
+
+        /**
+         * upper bound of concurrency, also the consume thread number
+         */
+        int maxConcurrency = 16;
+
+        /**
+         * how often concurrency is adjusted
+         */
+        int adjustIntervalMillis = 1000;
+
+        /**
+         * how much average latency may exceed the best observed latency before concurrency shrinks
+         */
+        double latencyTolerance = 1.5;
+    }
+
+    @Data
+    public static class CircuitBreaker {
+
+        /**
+         * number of last messages failure rate is computed over
+         */
+        int windowSize = 100;
+
+        /**
+         * min messages recorded before circuit may open
+         */
+        int minimumCalls = 20;
+
+        /**
+         * failure rate in percent that opens circuit
+         */
+        int failureRateThreshold = 50;
+
+        /**
+         * how long an open circuit stays open
+         */
+        long openMillis = 30000;
+
+        /**
+         * messages let through when half open
+         */
+        int halfOpenProbes = 3;
     }
 
 }
@@ -1,5 +1,7 @@
 package com.aihuishou.message.properties;
 
+import com.aihuishou.message.constants.InFlightOverflowPolicy;
+import com.aihuishou.message.constants.ProducerSelection;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.NestedConfigurationProperty;
@@ -23,12 +25,165 @@ public class ProducerProperties {
      */
     private Boolean enableRetry = true;
 
+    /**
+     * content type of payloads sent without `contentType` header, picks the codec of message body
+     * eg application/json, application/x-jackson-smile, application/cbor
+     */
+    private String contentType = "application/json";
+
     /**
      * retry do not rely on message system
      */
     @NestedConfigurationProperty
     private ProducerProperties.Retry retry;
 
+    /**
+     * compression of large message bodies
+     */
+    @NestedConfigurationProperty
+    private ProducerProperties.Compression compression = new ProducerProperties.Compression();
+
+    /**
+     * accumulation of messages sent by MqTemplate#batchSend
+     */
+    @NestedConfigurationProperty
+    private ProducerProperties.Batch batch = new ProducerProperties.Batch();
+
+    /**
+     * ons producers MqTemplate spreads sends across, each has its own client instance and network channel
+     */
+    private int poolSize = 1;
+
+    /**
+     * member selection and health of producer pool, applies when poolSize is greater than 1
+     */
+    @NestedConfigurationProperty
+    private ProducerProperties.Pool pool = new ProducerProperties.Pool();
+
+    /**
+     * ordered sends by MqTemplate#syncSendOrderly
+     */
+    @NestedConfigurationProperty
+    private ProducerProperties.Order order = new ProducerProperties.Order();
+
+    /**
+     * backpressure of asynchronous sends
+     */
+    @NestedConfigurationProperty
+    private ProducerProperties.Async async = new ProducerProperties.Async();
+
+    @Data
+    public static class Order {
+
+        /**
+         * whether create ons order producer
+         */
+        boolean enabled = false;
+
+        /**
+         * shards business keys are hashed into, the shard becomes sharding key; 0 sends business key as sharding key
+         */
+        int shards = 64;
+
+        /**
+         * threads asynchronous ordered sends run on, sends of one sharding key share one thread
+         */
+        int asyncLanes = 8;
+
+        /**
+         * max milliseconds queued asynchronous ordered sends are waited for on shutdown
+         */
+        long closeTimeoutMillis = 10000;
+    }
+
+    @Data
+    public static class Pool {
+
+        /**
+         * how the member of one send is picked
+         */
+        ProducerSelection selection = ProducerSelection.ROUND_ROBIN;
+
+        /**
+         * consecutive failed sends after which a member is skipped
+         */
+        int failureThreshold = 5;
+
+        /**
+         * milliseconds an unhealthy member is skipped before it is tried again
+         */
+        long unhealthyMillis = 10000;
+    }
+
+    @Data
+    public static class Async {
+
+        /**
+         * max asynchronous sends awaiting broker acknowledgement
+         */
+        int maxInFlight = 2048;
+
+        /**
+         * what a send does when maxInFlight is reached
+         */
+        InFlightOverflowPolicy overflowPolicy = InFlightOverflowPolicy.BLOCK;
+
+        /**
+         * max milliseconds a send waits for a permit when overflowPolicy is TIMEOUT
+         */
+        long acquireTimeoutMillis = 1000;
+    }
+
+    @Data
+    public static class Batch {
+
+        /**
+         * whether group batchSend messages per topic and send each group as one broker request, otherwise each one is
+         * sent right away
+         */
+        boolean enabled = false;
+
+        /**
+         * max messages of one group
+         */
+        int maxMessages = 128;
+
+        /**
+         * max bytes of one group, bodies and properties, a group is one message to broker and must stay below its max
+         * message size
+         */
+        long maxBytes = 1024 * 1024;
+
+        /**
+         * max milliseconds the first message of a group waits for others
+         */
+        long lingerMillis = 5;
+    }
+
+    @Data
+    public static class Compression {
+
+        /**
+         * whether compress message bodies, consumers undo compression whether or not it is enabled here
+         */
+        boolean enabled = false;
+
+        /**
+         * compressor name, gzip or deflate, or name of a registered MessageCompressor bean
+         */
+        String algorithm = "gzip";
+
+        /**
+         * min body bytes compressed
+         */
+        int thresholdBytes = 16 * 1024;
+
+        /**
+         * max bytes consumers decompress a body to, larger bodies fail to convert
+         */
+        int maxDecompressedBytes = 64 * 1024 * 1024;
+    }
+
     @Data
     public static class Retry {
 
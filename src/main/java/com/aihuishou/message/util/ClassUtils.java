@@ -1,9 +1,12 @@
 package com.aihuishou.message.util;
 
 import com.aihuishou.message.consumer.MqListener;
+import org.springframework.core.ResolvableType;
 
+import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -16,6 +19,21 @@ public final class ClassUtils {
     }
 
     public static Class getMethodParameterType(Class<?> clazz) {
+        return getMethodParameterType(clazz, MqListener.class);
+    }
+
+    public static Class getMethodParameterType(Class<?> clazz, Class<?> listenerInterface) {
+        return ResolvableType.forType(getMethodParameterGenericType(clazz, listenerInterface)).resolve(Object.class);
+    }
+
+    /**
+     * resolve type argument of listener interface with its generics, eg `List<Foo>` of `MqListener<List<Foo>>`
+     *
+     * @param clazz             listener class
+     * @param listenerInterface MqListener or MqBatchListener
+     * @return type argument, Object if not declared
+     */
+    public static Type getMethodParameterGenericType(Class<?> clazz, Class<?> listenerInterface) {
 
         Type[] interfaces = clazz.getGenericInterfaces();
 
@@ -23,10 +41,10 @@ public final class ClassUtils {
             for (Type type : interfaces) {
                 if (type instanceof ParameterizedType) {
                     ParameterizedType parameterizedType = (ParameterizedType) type;
-                    if (Objects.equals(parameterizedType.getRawType(), MqListener.class)) {
+                    if (Objects.equals(parameterizedType.getRawType(), listenerInterface)) {
                         Type[] actualTypeArguments = parameterizedType.getActualTypeArguments();
                         if (Objects.nonNull(actualTypeArguments) && actualTypeArguments.length > 0) {
-                            return (Class) actualTypeArguments[0];
+                            return actualTypeArguments[0];
                         } else {
                             return Object.class;
                         }
@@ -39,4 +57,33 @@ public final class ClassUtils {
             return Object.class;
         }
     }
+
+    /**
+     * resolve element type of batch handler method argument, eg `Foo` of `List<Foo>`
+     *
+     * @param method batch handler method
+     * @return element type, Object if not declared
+     */
+    public static Class getBatchMethodParameterType(Method method) {
+        return ResolvableType.forType(getBatchMethodParameterGenericType(method)).resolve(Object.class);
+    }
+
+    /**
+     * resolve element type of batch handler method argument with its generics, eg `Map<String, Foo>` of `List<Map<String, Foo>>`
+     *
+     * @param method batch handler method
+     * @return element type, Object if not declared
+     */
+    public static Type getBatchMethodParameterGenericType(Method method) {
+
+        ResolvableType parameterType = ResolvableType.forMethodParameter(method, 0);
+
+        if (!List.class.isAssignableFrom(parameterType.resolve(Object.class))) {
+            throw new IllegalStateException("batch handler method:" + method + " must accept java.util.List, but find " + parameterType);
+        }
+
+        ResolvableType elementType = parameterType.getGeneric(0);
+
+        return null == elementType.resolve() ? Object.class : elementType.getType();
+    }
 }
@@ -0,0 +1,77 @@
+package com.aihuishou.message.consumer.container;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * dispatch cost of one message to an annotated handler method, reflective invoke against precompiled invoker
+ * <note>
+ * run: mvn test-compile, then main of this class with test classpath
+ * </note>
+ *
+ * @author js.xie
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandlerInvokerBenchmark {
+
+    private Handler handler;
+
+    private Method method;
+
+    private HandlerInvoker invoker;
+
+    private Object payload;
+
+    @Setup
+    public void setup() throws Exception {
+        handler = new Handler();
+        method = Handler.class.getMethod("onMessage", String.class);
+        invoker = HandlerInvoker.of(handler, method);
+        payload = "payload";
+    }
+
+    @Benchmark
+    public void reflective(Blackhole blackhole) throws Exception {
+        method.invoke(handler, payload);
+        blackhole.consume(handler.count);
+    }
+
+    @Benchmark
+    public void invoker(Blackhole blackhole) throws Exception {
+        invoker.invoke(payload);
+        blackhole.consume(handler.count);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HandlerInvokerBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    public static class Handler {
+
+        private int count;
+
+        public void onMessage(String message) {
+            count += message.length();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.aihuishou.message.consumer.container;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author js.xie
+ */
+public class KeyOrderedDispatcherTest {
+
+    private final List<String> ran = new CopyOnWriteArrayList<>();
+
+    private KeyOrderedDispatcher dispatcher;
+
+    @After
+    public void tearDown() {
+        if (null != dispatcher) {
+            dispatcher.close(0);
+        }
+    }
+
+    @Test
+    public void runsTasksOfOneKeyInOrderAndKeysInParallel() throws Exception {
+
+        dispatcher = new KeyOrderedDispatcher("test", 2, 16);
+
+        CountDownLatch otherKeyRan = new CountDownLatch(1);
+
+        // key 0 waits for key 1, which only works when they run on different lanes at once
+        boolean success = dispatcher.runAll(Arrays.asList(
+                new Task(0, "a1", () -> assertThat(otherKeyRan.await(5, TimeUnit.SECONDS)).isTrue()),
+                new Task(0, "a2"),
+                new Task(1, "b1", otherKeyRan::countDown),
+                new Task(0, "a3")));
+
+        assertThat(success).isTrue();
+        assertThat(ran).containsSubsequence("a1", "a2", "a3").contains("b1");
+    }
+
+    @Test
+    public void failedTaskHoldsItsKeyBackAndFailsBatch() {
+
+        dispatcher = new KeyOrderedDispatcher("test", 2, 16);
+
+        boolean success = dispatcher.runAll(Arrays.asList(
+                new Task(0, "a1", () -> {
+                    throw new IllegalStateException("boom");
+                }),
+                new Task(0, "a2"),
+                new Task(1, "b1")));
+
+        assertThat(success).isFalse();
+        assertThat(ran).containsExactly("b1");
+    }
+
+    @Test
+    public void givenUpTaskLetsItsKeyProceed() {
+
+        dispatcher = new KeyOrderedDispatcher("test", 1, 16);
+
+        Task poison = new Task(0, "a1", () -> {
+            throw new IllegalStateException("boom");
+        });
+        poison.giveUp = true;
+
+        boolean success = dispatcher.runAll(Arrays.asList(poison, new Task(0, "a2")));
+
+        assertThat(success).isTrue();
+        assertThat(ran).containsExactly("a2");
+    }
+
+    @Test
+    public void laneFullDoesNotHoldOtherLanesUp() throws Exception {
+
+        dispatcher = new KeyOrderedDispatcher("test", 2, 1);
+
+        CountDownLatch unblock = new CountDownLatch(1);
+
+        CompletableFuture<Boolean> blocked = CompletableFuture.supplyAsync(() -> dispatcher.runAll(Arrays.asList(
+                new Task(0, "a1", unblock::await),
+                new Task(0, "a2"))));
+
+        // lane 0 is busy and its window is used up, lane 1 still runs
+        assertThat(dispatcher.runAll(Collections.singletonList(new Task(1, "b1")))).isTrue();
+        assertThat(blocked.isDone()).isFalse();
+
+        unblock.countDown();
+
+        assertThat(blocked.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(ran).containsExactly("b1", "a1", "a2");
+    }
+
+    @Test
+    public void closeCancelsQueuedTasksAndFailsTheirBatch() throws Exception {
+
+        dispatcher = new KeyOrderedDispatcher("test", 1, 16);
+
+        CompletableFuture<Boolean> batch = new CompletableFuture<>();
+
+        Thread caller = new Thread(() -> batch.complete(dispatcher.runAll(Arrays.asList(
+                new Task(0, "a1", () -> new CountDownLatch(1).await()),
+                new Task(0, "a2")))));
+        caller.start();
+
+        // caller waits for its batch once both tasks are queued
+        long deadline = System.currentTimeMillis() + 5000;
+        while (caller.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+
+        assertThat(dispatcher.close(0)).isEqualTo(1);
+
+        assertThat(batch.get(5, TimeUnit.SECONDS)).isFalse();
+        assertThat(ran).isEmpty();
+    }
+
+    @Test
+    public void closedDispatcherRunsNothing() {
+
+        dispatcher = new KeyOrderedDispatcher("test", 1, 16);
+        dispatcher.close(0);
+
+        assertThat(dispatcher.runAll(Collections.singletonList(new Task(0, "a1")))).isFalse();
+        assertThat(ran).isEmpty();
+    }
+
+    private interface Body {
+
+        void run() throws Exception;
+    }
+
+    private final class Task implements KeyOrderedDispatcher.KeyedTask {
+
+        private final Object key;
+
+        private final String name;
+
+        private final Body body;
+
+        private boolean giveUp;
+
+        private Task(Object key, String name) {
+            this(key, name, () -> {
+            });
+        }
+
+        private Task(Object key, String name, Body body) {
+            this.key = key;
+            this.name = name;
+            this.body = body;
+        }
+
+        @Override
+        public Object getKey() {
+            return key;
+        }
+
+        @Override
+        public void run() throws Exception {
+            body.run();
+            ran.add(name);
+        }
+
+        @Override
+        public boolean onFailure(Exception e) {
+            return giveUp;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.aihuishou.message.consumer.container;
+
+import com.aihuishou.message.properties.ConsumerContainerProperties;
+import com.aihuishou.message.properties.ConsumerProperties;
+import org.junit.Test;
+import org.springframework.context.ApplicationContext;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author js.xie
+ */
+public class MqListenerContainerLifecycleTest {
+
+    @Test
+    public void failedStartStopsStartedContainers() {
+
+        MqListenerContainer started = container();
+        MqListenerContainer failed = container();
+        doThrow(new IllegalStateException("boom")).when(failed).start();
+
+        MqListenerContainerLifecycle lifecycle = lifecycle(60000, started, failed);
+
+        assertThatThrownBy(lifecycle::start).isInstanceOf(IllegalStateException.class).hasMessageContaining("failed");
+
+        verify(started).stop();
+        verify(failed, never()).stop();
+    }
+
+    @Test
+    public void timedOutStartStopsContainersOnceStarted() throws Exception {
+
+        CountDownLatch unblock = new CountDownLatch(1);
+
+        MqListenerContainer started = container();
+        AtomicBoolean slowStarted = new AtomicBoolean();
+        MqListenerContainer slow = container(slowStarted);
+        doAnswer(invocation -> {
+            // start goes on when interrupted, like a client connecting
+            while (unblock.getCount() > 0) {
+                try {
+                    unblock.await();
+                } catch (InterruptedException e) {
+                    // interrupted by executor shutdown
+                }
+            }
+            slowStarted.set(true);
+            return null;
+        }).when(slow).start();
+
+        MqListenerContainerLifecycle lifecycle = lifecycle(200, started, slow);
+
+        assertThatThrownBy(lifecycle::start).isInstanceOf(IllegalStateException.class).hasMessageContaining("timed out");
+
+        verify(started).stop();
+        verify(slow, never()).stop();
+
+        unblock.countDown();
+
+        verify(slow, timeout(5000)).stop();
+    }
+
+    private static MqListenerContainerLifecycle lifecycle(long timeoutMillis, MqListenerContainer... containers) {
+
+        Map<String, MqListenerContainer> beans = new LinkedHashMap<>();
+        for (int i = 0; i < containers.length; i++) {
+            beans.put("container" + i, containers[i]);
+        }
+
+        ApplicationContext applicationContext = mock(ApplicationContext.class);
+        when(applicationContext.getBeansOfType(MqListenerContainer.class)).thenReturn(beans);
+
+        ConsumerContainerProperties.Lifecycle properties = new ConsumerContainerProperties.Lifecycle();
+        properties.setTimeoutMillis(timeoutMillis);
+
+        MqListenerContainerLifecycle lifecycle = new MqListenerContainerLifecycle(properties);
+        lifecycle.setApplicationContext(applicationContext);
+
+        return lifecycle;
+    }
+
+    /**
+     * container reporting started once its start returned
+     */
+    private static MqListenerContainer container() {
+
+        AtomicBoolean started = new AtomicBoolean();
+
+        MqListenerContainer container = container(started);
+        doAnswer(invocation -> {
+            started.set(true);
+            return null;
+        }).when(container).start();
+
+        return container;
+    }
+
+    private static MqListenerContainer container(AtomicBoolean started) {
+
+        MqListenerContainer container = mock(MqListenerContainer.class);
+        when(container.getConsumerProperties()).thenReturn(new ConsumerProperties());
+        when(container.isStarted()).thenAnswer(invocation -> started.get());
+
+        return container;
+    }
+}
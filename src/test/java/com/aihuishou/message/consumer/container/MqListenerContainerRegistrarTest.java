@@ -0,0 +1,56 @@
+package com.aihuishou.message.consumer.container;
+
+import com.aihuishou.message.annotation.ConsumerRetry;
+import com.aihuishou.message.constants.RetryMode;
+import com.aihuishou.message.properties.ConsumerProperties;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author js.xie
+ */
+public class MqListenerContainerRegistrarTest {
+
+    @Test
+    public void scheduledRetryWithoutBackOffIsBuilt() {
+
+        ConsumerProperties.Retry retry = MqListenerContainerRegistrar.buildRetry(retryOf(Scheduled.class), Scheduled.class);
+
+        assertThat(retry.getMode()).isEqualTo(RetryMode.SCHEDULED);
+        assertThat(retry.getMaxAttempts()).isEqualTo(5);
+    }
+
+    @Test
+    public void scheduledRetryRejectsBackOff() {
+        assertThatThrownBy(() -> MqListenerContainerRegistrar.buildRetry(retryOf(ScheduledWithBackOff.class), ScheduledWithBackOff.class))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("SCHEDULED");
+    }
+
+    @Test
+    public void blockingRetryKeepsBackOff() {
+
+        ConsumerProperties.Retry retry = MqListenerContainerRegistrar.buildRetry(retryOf(BlockingWithBackOff.class), BlockingWithBackOff.class);
+
+        assertThat(retry.getBackOffInitialInterval()).isEqualTo(50);
+        assertThat(retry.getBackOffMultiplier()).isEqualTo(3.0);
+    }
+
+    private static ConsumerRetry retryOf(Class<?> type) {
+        return type.getAnnotation(ConsumerRetry.class);
+    }
+
+    @ConsumerRetry(maxAttempts = 5, mode = RetryMode.SCHEDULED)
+    private static class Scheduled {
+    }
+
+    @ConsumerRetry(backOffInitialInterval = 50, mode = RetryMode.SCHEDULED)
+    private static class ScheduledWithBackOff {
+    }
+
+    @ConsumerRetry(backOffInitialInterval = 50, backOffMultiplier = 3.0)
+    private static class BlockingWithBackOff {
+    }
+}
@@ -0,0 +1,153 @@
+package com.aihuishou.message.consumer.dedup;
+
+import com.aihuishou.message.constants.DedupKey;
+import com.aliyun.openservices.ons.api.Message;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author js.xie
+ */
+public class DuplicateMessageFilterTest {
+
+    /**
+     * slots of one probe window, see DuplicateMessageFilter#PROBES
+     */
+    private static final int PROBES = 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DuplicateMessageFilter filter;
+
+    @After
+    public void tearDown() {
+        if (null != filter) {
+            filter.close();
+        }
+    }
+
+    @Test
+    public void claimedMessageIsDuplicateUntilReleased() {
+
+        filter = new DuplicateMessageFilter(DedupKey.KEY, 1024, 60000, null);
+
+        assertThat(filter.tryClaim(message("k1"))).isTrue();
+        assertThat(filter.tryClaim(message("k1"))).isFalse();
+
+        filter.release(message("k1"));
+
+        assertThat(filter.tryClaim(message("k1"))).isTrue();
+    }
+
+    @Test
+    public void consumedMessageStaysDuplicate() {
+
+        filter = new DuplicateMessageFilter(DedupKey.KEY, 1024, 60000, null);
+
+        assertThat(filter.tryClaim(message("k1"))).isTrue();
+        filter.markConsumed(message("k1"));
+
+        assertThat(filter.tryClaim(message("k1"))).isFalse();
+    }
+
+    @Test
+    public void messageWithoutKeyIsAlwaysClaimed() {
+
+        filter = new DuplicateMessageFilter(DedupKey.KEY, 1024, 60000, null);
+
+        assertThat(filter.tryClaim(message(null))).isTrue();
+        assertThat(filter.tryClaim(message(null))).isTrue();
+    }
+
+    @Test
+    public void runningClaimIsNeverEvicted() {
+
+        filter = new DuplicateMessageFilter(DedupKey.KEY, 1, 60000, null);
+
+        List<Message> colliding = collidingMessages(PROBES + 1);
+
+        for (int i = 0; i < PROBES; i++) {
+            assertThat(filter.tryClaim(colliding.get(i))).isTrue();
+        }
+
+        assertThatThrownBy(() -> filter.tryClaim(colliding.get(PROBES))).isInstanceOf(IllegalStateException.class);
+
+        // every running claim still holds its message back
+        for (int i = 0; i < PROBES; i++) {
+            assertThat(filter.tryClaim(colliding.get(i))).isFalse();
+        }
+    }
+
+    @Test
+    public void settledMessageIsEvictedForNewClaim() {
+
+        filter = new DuplicateMessageFilter(DedupKey.KEY, 1, 60000, null);
+
+        List<Message> colliding = collidingMessages(PROBES + 1);
+
+        for (int i = 0; i < PROBES; i++) {
+            assertThat(filter.tryClaim(colliding.get(i))).isTrue();
+        }
+
+        filter.markConsumed(colliding.get(0));
+
+        assertThat(filter.tryClaim(colliding.get(PROBES))).isTrue();
+        assertThat(filter.tryClaim(colliding.get(1))).isFalse();
+    }
+
+    @Test
+    public void consumedMessagesAreRestoredFromJournal() throws Exception {
+
+        DedupJournal journal = new DedupJournal(folder.getRoot().toPath().resolve("group.dedup"), 1024);
+        filter = new DuplicateMessageFilter(DedupKey.KEY, 1024, 60000, journal);
+
+        filter.tryClaim(message("k1"));
+        filter.markConsumed(message("k1"));
+        filter.tryClaim(message("k2"));
+        filter.close();
+
+        journal = new DedupJournal(folder.getRoot().toPath().resolve("group.dedup"), 1024);
+        filter = new DuplicateMessageFilter(DedupKey.KEY, 1024, 60000, journal);
+
+        assertThat(filter.tryClaim(message("k1"))).isFalse();
+        // a claim never settled is not journaled
+        assertThat(filter.tryClaim(message("k2"))).isTrue();
+    }
+
+    /**
+     * messages whose hashes fall into the probe window of the first one
+     */
+    private List<Message> collidingMessages(int count) {
+
+        List<Message> messages = new ArrayList<>(count);
+
+        long first = 0L;
+
+        for (int i = 0; messages.size() < count; i++) {
+
+            Message message = message("k" + i);
+            long hash = filter.hashOf(message);
+
+            // same segment by top bits, same home slot by low bits of a 16 slot segment
+            if (messages.isEmpty() || (hash >>> 60 == first >>> 60 && (hash & 15) == (first & 15))) {
+                messages.add(message);
+                first = messages.size() == 1 ? hash : first;
+            }
+        }
+
+        return messages;
+    }
+
+    private static Message message(String key) {
+        return new Message("topic", "tag", key, new byte[0]);
+    }
+}
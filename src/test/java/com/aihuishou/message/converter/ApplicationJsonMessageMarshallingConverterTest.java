@@ -0,0 +1,69 @@
+package com.aihuishou.message.converter;
+
+import com.aliyun.openservices.ons.api.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author js.xie
+ */
+public class ApplicationJsonMessageMarshallingConverterTest {
+
+    private static final byte[] PAYLOAD = {0, 1, 2, (byte) 0xff};
+
+    private ApplicationJsonMessageMarshallingConverter converter;
+
+    @Before
+    public void setUp() {
+        converter = new ApplicationJsonMessageMarshallingConverter();
+        converter.setObjectMapper(new ObjectMapper());
+    }
+
+    @Test
+    public void bytesAreBase64JsonByDefault() {
+
+        Message message = converter.toMessage("topic:tag", MessageBuilder.withPayload(PAYLOAD).build());
+
+        assertThat(new String(message.getBody(), StandardCharsets.UTF_8)).isEqualTo("\"" + Base64.getEncoder().encodeToString(PAYLOAD) + "\"");
+        assertThat(converter.fromMessage(message, byte[].class)).isEqualTo(PAYLOAD);
+    }
+
+    @Test
+    public void bytesOfTypedWriterAreBase64JsonByDefault() {
+
+        Message message = converter.writerFor("topic:tag", byte[].class, Collections.emptyMap()).write(PAYLOAD, null);
+
+        assertThat(message.getBody()[0]).isEqualTo((byte) '"');
+        assertThat(converter.fromMessage(message, byte[].class)).isEqualTo(PAYLOAD);
+    }
+
+    @Test
+    public void bytesWithoutContentTypeAreReadAsBase64Json() {
+
+        // body as sent by producers before content types
+        Message message = new Message("topic", "tag", ("\"" + Base64.getEncoder().encodeToString(PAYLOAD) + "\"").getBytes(StandardCharsets.UTF_8));
+
+        assertThat(converter.fromMessage(message, byte[].class)).isEqualTo(PAYLOAD);
+    }
+
+    @Test
+    public void bytesAreRawWithOctetStreamContentType() {
+
+        Message message = converter.toMessage("topic:tag", MessageBuilder.withPayload(PAYLOAD)
+                .setHeader(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_OCTET_STREAM_VALUE).build());
+
+        assertThat(message.getBody()).isEqualTo(PAYLOAD);
+        assertThat(message.getUserProperties(MessageCodec.CONTENT_TYPE_PROPERTY)).isEqualTo(MimeTypeUtils.APPLICATION_OCTET_STREAM_VALUE);
+        assertThat(converter.fromMessage(message, byte[].class)).isEqualTo(PAYLOAD);
+    }
+}
@@ -0,0 +1,178 @@
+package com.aihuishou.message.error;
+
+import com.aihuishou.message.constants.ErrorOverflowPolicy;
+import com.aihuishou.message.properties.ConsumerContainerProperties;
+import com.aliyun.openservices.ons.api.Message;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author js.xie
+ */
+public class ErrorMessagePipelineTest {
+
+    private final CountDownLatch unblock = new CountDownLatch(1);
+
+    private ErrorMessagePipeline pipeline;
+
+    @After
+    public void tearDown() throws Exception {
+        unblock.countDown();
+        if (null != pipeline) {
+            pipeline.destroy();
+        }
+    }
+
+    @Test
+    public void messageIsKeptOnceKeeperHandledIt() {
+
+        Strategy keeper = new Strategy(true);
+
+        pipeline = new ErrorMessagePipeline(properties(16, ErrorOverflowPolicy.DISCARD_OLDEST), Collections.singletonList(keeper));
+
+        assertThat(pipeline.submit(failed("m1"))).isTrue();
+        assertThat(keeper.msgIds).containsExactly("m1");
+    }
+
+    @Test
+    public void messageIsNotKeptWhenKeeperFails() {
+
+        Strategy keeper = new Strategy(true);
+        keeper.fail = true;
+
+        pipeline = new ErrorMessagePipeline(properties(16, ErrorOverflowPolicy.DISCARD_OLDEST), Collections.singletonList(keeper));
+
+        assertThat(pipeline.submit(failed("m1"))).isFalse();
+    }
+
+    @Test
+    public void messageIsNotKeptWithoutKeeper() throws Exception {
+
+        Strategy notifier = new Strategy(false);
+
+        pipeline = new ErrorMessagePipeline(properties(16, ErrorOverflowPolicy.DISCARD_OLDEST), Collections.singletonList(notifier));
+
+        assertThat(pipeline.submit(failed("m1"))).isFalse();
+
+        pipeline.destroy();
+
+        assertThat(notifier.msgIds).containsExactly("m1");
+    }
+
+    @Test
+    public void overflowNeverDropsKeptMessage() throws Exception {
+
+        Strategy keeper = new Strategy(true);
+        Strategy notifier = new Strategy(false);
+        notifier.blocked = true;
+
+        pipeline = new ErrorMessagePipeline(properties(1, ErrorOverflowPolicy.DISCARD_OLDEST), Arrays.asList(keeper, notifier));
+
+        // worker is stuck in notifier with m1, m2 waits in queue, m3 and m4 overflow
+        assertThat(pipeline.submit(failed("m1"))).isTrue();
+        assertThat(notifier.entered.await(5, TimeUnit.SECONDS)).isTrue();
+
+        for (String msgId : Arrays.asList("m2", "m3", "m4")) {
+            assertThat(pipeline.submit(failed(msgId))).isTrue();
+        }
+
+        assertThat(keeper.msgIds).containsExactly("m1", "m2", "m3", "m4");
+        assertThat(pipeline.getDiscardedCount()).isEqualTo(2);
+
+        unblock.countDown();
+        pipeline.destroy();
+
+        assertThat(notifier.msgIds).containsExactly("m1", "m4");
+    }
+
+    @Test
+    public void discardPolicyDropsNewMessageForNotifiersOnly() throws Exception {
+
+        Strategy keeper = new Strategy(true);
+        Strategy notifier = new Strategy(false);
+        notifier.blocked = true;
+
+        pipeline = new ErrorMessagePipeline(properties(1, ErrorOverflowPolicy.DISCARD), Arrays.asList(keeper, notifier));
+
+        pipeline.submit(failed("m1"));
+        assertThat(notifier.entered.await(5, TimeUnit.SECONDS)).isTrue();
+
+        pipeline.submit(failed("m2"));
+        assertThat(pipeline.submit(failed("m3"))).isTrue();
+
+        unblock.countDown();
+        pipeline.destroy();
+
+        assertThat(keeper.msgIds).containsExactly("m1", "m2", "m3");
+        assertThat(notifier.msgIds).containsExactly("m1", "m2");
+    }
+
+    private static ConsumerContainerProperties.ErrorHandler properties(int queueCapacity, ErrorOverflowPolicy overflowPolicy) {
+
+        ConsumerContainerProperties.ErrorHandler properties = new ConsumerContainerProperties.ErrorHandler();
+        properties.setQueueCapacity(queueCapacity);
+        properties.setBatchSize(1);
+        properties.setLingerMillis(0);
+        properties.setOverflowPolicy(overflowPolicy);
+
+        return properties;
+    }
+
+    private static FailedMessage failed(String msgId) {
+
+        Message message = new Message("topic", "tag", new byte[0]);
+        message.setMsgID(msgId);
+
+        return new FailedMessage(message, new IllegalStateException("boom"), "group");
+    }
+
+    private final class Strategy implements ErrorMessageHandlerStrategy {
+
+        private final boolean keeps;
+
+        private final List<String> msgIds = new CopyOnWriteArrayList<>();
+
+        private final CountDownLatch entered = new CountDownLatch(1);
+
+        private volatile boolean fail;
+
+        private volatile boolean blocked;
+
+        private Strategy(boolean keeps) {
+            this.keeps = keeps;
+        }
+
+        @Override
+        public boolean keepsMessage() {
+            return keeps;
+        }
+
+        @Override
+        public void handleErrorMessage(Message message, Throwable throwable) {
+
+            if (fail) {
+                throw new IllegalStateException("disk full");
+            }
+
+            msgIds.add(message.getMsgID());
+            entered.countDown();
+
+            if (blocked) {
+                try {
+                    unblock.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
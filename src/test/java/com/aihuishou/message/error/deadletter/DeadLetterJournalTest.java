@@ -0,0 +1,135 @@
+package com.aihuishou.message.error.deadletter;
+
+import com.aliyun.openservices.ons.api.Message;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author js.xie
+ */
+public class DeadLetterJournalTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DeadLetterJournal journal;
+
+    @After
+    public void tearDown() throws Exception {
+        if (null != journal) {
+            journal.destroy();
+        }
+    }
+
+    @Test
+    public void appendedEntriesAreReadAfterReopen() throws Exception {
+
+        journal = open(100);
+
+        assertThat(journal.append(entry("m1", 16))).isTrue();
+        assertThat(journal.append(entry("m2", 16))).isTrue();
+        journal.destroy();
+
+        journal = open(100);
+
+        assertThat(msgIdsOf(journal)).containsExactly("m1", "m2");
+        // msgIds are restored, a recorded message is not appended again
+        assertThat(journal.append(entry("m1", 16))).isFalse();
+    }
+
+    @Test
+    public void appendRollsToNextSegmentWhenFull() throws Exception {
+
+        journal = open(100);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(journal.append(entry("m" + i, 1024))).isTrue();
+        }
+
+        assertThat(folder.getRoot().listFiles().length).isGreaterThan(1);
+        assertThat(msgIdsOf(journal)).hasSize(10).startsWith("m0").endsWith("m9");
+    }
+
+    @Test
+    public void entryLargerThanSegmentIsRejected() throws Exception {
+
+        journal = open(100);
+
+        assertThatThrownBy(() -> journal.append(entry("m1", SEGMENT_SIZE))).isInstanceOf(IllegalArgumentException.class);
+        assertThat(msgIdsOf(journal)).isEmpty();
+    }
+
+    @Test
+    public void onlyLatestMsgIdsAreRemembered() throws Exception {
+
+        journal = open(2);
+
+        journal.append(entry("m1", 16));
+        journal.append(entry("m2", 16));
+        journal.append(entry("m3", 16));
+
+        assertThat(journal.append(entry("m3", 16))).isFalse();
+        // m1 is forgotten, it is recorded again
+        assertThat(journal.append(entry("m1", 16))).isTrue();
+    }
+
+    @Test
+    public void strategyThrowsWhenAppendFails() throws Exception {
+
+        journal = open(100);
+
+        DeadLetterJournalErrorMessageHandlerStrategy strategy = new DeadLetterJournalErrorMessageHandlerStrategy(journal);
+
+        strategy.handleErrorMessage(message("m1", 16), new IllegalStateException("boom"));
+
+        assertThatThrownBy(() -> strategy.handleErrorMessage(message("m2", SEGMENT_SIZE), new IllegalStateException("boom")))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(msgIdsOf(journal)).containsExactly("m1");
+    }
+
+    @Test
+    public void flushForcesWrittenSegment() throws Exception {
+
+        journal = new DeadLetterJournal(folder.getRoot().getPath(), SEGMENT_SIZE, 10, 100);
+
+        journal.append(entry("m1", 16));
+        journal.flush();
+
+        assertThat(msgIdsOf(journal)).containsExactly("m1");
+    }
+
+    private DeadLetterJournal open(int msgIdCapacity) throws Exception {
+        return new DeadLetterJournal(folder.getRoot().getPath(), SEGMENT_SIZE, 0, msgIdCapacity);
+    }
+
+    private static List<String> msgIdsOf(DeadLetterJournal journal) throws Exception {
+
+        List<String> msgIds = new ArrayList<>();
+        journal.read(entry -> msgIds.add(entry.getMsgId()));
+
+        return msgIds;
+    }
+
+    private static DeadLetterEntry entry(String msgId, int bodySize) {
+        return DeadLetterEntry.of(message(msgId, bodySize), new IllegalStateException("boom"), "group", System.currentTimeMillis());
+    }
+
+    private static Message message(String msgId, int bodySize) {
+
+        Message message = new Message("topic", "tag", "key", new byte[bodySize]);
+        message.setMsgID(msgId);
+
+        return message;
+    }
+}
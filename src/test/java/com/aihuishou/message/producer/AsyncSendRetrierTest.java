@@ -0,0 +1,118 @@
+package com.aihuishou.message.producer;
+
+import com.aliyun.openservices.ons.api.Message;
+import com.aliyun.openservices.ons.api.OnExceptionContext;
+import com.aliyun.openservices.ons.api.SendCallback;
+import com.aliyun.openservices.ons.api.SendResult;
+import com.aliyun.openservices.ons.api.exception.ONSClientException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author js.xie
+ */
+public class AsyncSendRetrierTest {
+
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    private AsyncSendRetrier retrier;
+
+    @After
+    public void tearDown() {
+        if (null != retrier) {
+            retrier.close();
+        }
+    }
+
+    @Test
+    public void failedBatchIsResentUntilSuccess() throws Exception {
+
+        retrier = new AsyncSendRetrier(3, 1, 1, 1);
+
+        Result result = new Result();
+
+        retrier.sendBatchAsync(failingTimes(2), Collections.singletonList(message()), result);
+
+        assertThat(result.await()).isInstanceOf(SendResult.class);
+        assertThat(attempts.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void lastFailureIsReportedOnceAttemptsAreExhausted() throws Exception {
+
+        retrier = new AsyncSendRetrier(2, 1, 1, 1);
+
+        Result result = new Result();
+
+        retrier.sendBatchAsync(failingTimes(5), Collections.singletonList(message()), result);
+
+        assertThat(result.await()).isInstanceOf(OnExceptionContext.class);
+        assertThat(attempts.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void closeFailsSendsWaitingForBackOff() throws Exception {
+
+        retrier = new AsyncSendRetrier(3, 60000, 1, 60000);
+
+        Result result = new Result();
+
+        retrier.sendBatchAsync(failingTimes(5), Collections.singletonList(message()), result);
+
+        assertThat(result.isDone()).isFalse();
+
+        retrier.close();
+
+        assertThat(result.await()).isInstanceOf(OnExceptionContext.class);
+        assertThat(attempts.get()).isEqualTo(1);
+    }
+
+    /**
+     * sender failing its first failures attempts, then succeeding
+     */
+    private BatchSender failingTimes(int failures) {
+
+        return (messages, sendCallback) -> {
+
+            if (attempts.incrementAndGet() <= failures) {
+                OnExceptionContext context = new OnExceptionContext();
+                context.setException(new ONSClientException("broker busy"));
+                sendCallback.onException(context);
+                return;
+            }
+
+            sendCallback.onSuccess(new SendResult());
+        };
+    }
+
+    private static Message message() {
+        return new Message("topic", "tag", new byte[0]);
+    }
+
+    /**
+     * final outcome, SendResult or OnExceptionContext, a second invocation fails the test
+     */
+    private static final class Result extends CompletableFuture<Object> implements SendCallback {
+
+        @Override
+        public void onSuccess(SendResult sendResult) {
+            assertThat(complete(sendResult)).isTrue();
+        }
+
+        @Override
+        public void onException(OnExceptionContext context) {
+            assertThat(complete(context)).isTrue();
+        }
+
+        private Object await() throws Exception {
+            return get(5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.aihuishou.message.producer;
+
+import com.aihuishou.message.constants.InFlightOverflowPolicy;
+import com.aihuishou.message.properties.ProducerProperties;
+import com.aliyun.openservices.ons.api.Message;
+import com.aliyun.openservices.ons.api.Producer;
+import com.aliyun.openservices.ons.api.SendResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author js.xie
+ */
+public class MqTemplateTest {
+
+    private MqTemplate mqTemplate;
+
+    @Before
+    public void setUp() {
+
+        ProducerProperties.Async async = new ProducerProperties.Async();
+        async.setMaxInFlight(1);
+        async.setOverflowPolicy(InFlightOverflowPolicy.FAIL_FAST);
+
+        ProducerProperties.Batch batch = new ProducerProperties.Batch();
+        batch.setEnabled(true);
+        batch.setMaxMessages(1);
+
+        mqTemplate = new MqTemplate();
+        mqTemplate.setProducer(mock(Producer.class));
+        mqTemplate.setInFlightLimiter(new InFlightLimiter(async));
+        // broker never acknowledges, permits stay taken
+        mqTemplate.buildBatchAccumulator((messages, sendCallback) -> {
+        }, batch);
+    }
+
+    @After
+    public void tearDown() {
+        mqTemplate.destroy();
+    }
+
+    @Test
+    public void batchSendOverInFlightLimitFailsFuture() {
+
+        CompletableFuture<SendResult> first = mqTemplate.doBatchSend(message());
+        CompletableFuture<SendResult> second = mqTemplate.doBatchSend(message());
+
+        assertThat(first).isNotDone();
+        assertThatThrownBy(second::get).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(RejectedExecutionException.class);
+        assertThat(mqTemplate.getInFlight()).isEqualTo(1);
+    }
+
+    private static Message message() {
+        return new Message("topic", "tag", new byte[0]);
+    }
+}
@@ -0,0 +1,101 @@
+package com.aihuishou.message.producer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author js.xie
+ */
+public class OrderedSendLanesTest {
+
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+
+    private OrderedSendLanes lanes;
+
+    @After
+    public void tearDown() {
+        if (null != lanes) {
+            lanes.close();
+        }
+    }
+
+    @Test
+    public void sendsOfOneKeyRunInOrder() throws Exception {
+
+        lanes = new OrderedSendLanes(4, 1000);
+
+        CompletableFuture<?> last = null;
+        for (int i = 0; i < 100; i++) {
+            String name = "m" + i;
+            last = lanes.submit("key", () -> sent.add(name));
+        }
+
+        last.get(5, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(sent.get(i)).isEqualTo("m" + i);
+        }
+    }
+
+    @Test
+    public void failedSendFailsItsFuture() {
+
+        lanes = new OrderedSendLanes(1, 1000);
+
+        CompletableFuture<Object> future = lanes.submit("key", () -> {
+            throw new IllegalStateException("broker busy");
+        });
+
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class).hasMessageContaining("broker busy");
+    }
+
+    @Test
+    public void closeFailsQueuedSendsSoTheirCallbacksRun() throws Exception {
+
+        lanes = new OrderedSendLanes(1, 0);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(2);
+
+        CompletableFuture<Boolean> running = lanes.submit("key", () -> {
+            started.countDown();
+            try {
+                return new CountDownLatch(1).await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException("interrupted", e);
+            }
+        });
+        CompletableFuture<Boolean> queued = lanes.submit("key", () -> sent.add("queued"));
+
+        running.whenComplete((result, throwable) -> released.countDown());
+        queued.whenComplete((result, throwable) -> released.countDown());
+
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(lanes.close()).isEqualTo(1);
+
+        assertThatThrownBy(() -> queued.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class).hasMessageContaining("closed");
+        assertThatThrownBy(() -> running.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class).hasMessageContaining("interrupted");
+        assertThat(released.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(sent).isEmpty();
+    }
+
+    @Test
+    public void closedLanesFailNewSends() {
+
+        lanes = new OrderedSendLanes(1, 0);
+        lanes.close();
+
+        assertThat(lanes.submit("key", () -> sent.add("late"))).isCompletedExceptionally();
+    }
+}
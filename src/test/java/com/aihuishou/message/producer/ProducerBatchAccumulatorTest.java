@@ -0,0 +1,215 @@
+package com.aihuishou.message.producer;
+
+import com.aihuishou.message.properties.ProducerProperties;
+import com.aliyun.openservices.ons.api.Message;
+import com.aliyun.openservices.ons.api.OnExceptionContext;
+import com.aliyun.openservices.ons.api.SendCallback;
+import com.aliyun.openservices.ons.api.SendResult;
+import com.aliyun.openservices.ons.api.exception.ONSClientException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author js.xie
+ */
+public class ProducerBatchAccumulatorTest {
+
+    private final List<List<Message>> requests = new CopyOnWriteArrayList<>();
+
+    private final List<SendCallback> callbacks = new CopyOnWriteArrayList<>();
+
+    private ProducerBatchAccumulator accumulator;
+
+    @After
+    public void tearDown() {
+        if (null != accumulator) {
+            accumulator.close();
+        }
+    }
+
+    @Test
+    public void groupIsFlushedAtMaxMessages() {
+
+        accumulator = accumulator(2, 1024 * 1024, 60000);
+
+        accumulator.append(message("a", 16));
+        assertThat(requests).isEmpty();
+
+        accumulator.append(message("b", 16));
+        assertThat(requests).hasSize(1);
+        assertThat(keysOf(requests.get(0))).containsExactly("a", "b");
+    }
+
+    @Test
+    public void groupIsFlushedBeforeMessageWouldCrossMaxBytes() {
+
+        long size = ProducerBatchAccumulator.sizeOf(message("a", 100));
+
+        accumulator = accumulator(128, size * 2 + size / 2, 60000);
+
+        accumulator.append(message("a", 100));
+        accumulator.append(message("b", 100));
+        assertThat(requests).isEmpty();
+
+        accumulator.append(message("c", 100));
+        assertThat(requests).hasSize(1);
+        assertThat(keysOf(requests.get(0))).containsExactly("a", "b");
+
+        accumulator.flush();
+        assertThat(keysOf(requests.get(1))).containsExactly("c");
+    }
+
+    @Test
+    public void oversizedMessageIsSentAlone() {
+
+        accumulator = accumulator(128, ProducerBatchAccumulator.sizeOf(message("a", 100)) * 2, 60000);
+
+        accumulator.append(message("a", 100));
+        accumulator.append(message("big", 4096));
+
+        assertThat(requests).hasSize(2);
+        assertThat(keysOf(requests.get(0))).containsExactly("a");
+        assertThat(keysOf(requests.get(1))).containsExactly("big");
+    }
+
+    @Test
+    public void sizeCountsProperties() {
+
+        Message plain = message("a", 100);
+
+        Message withProperties = message("a", 100);
+        withProperties.putUserProperties("trace", "0123456789");
+
+        assertThat(ProducerBatchAccumulator.sizeOf(plain)).isGreaterThan(100);
+        assertThat(ProducerBatchAccumulator.sizeOf(withProperties)).isGreaterThanOrEqualTo(ProducerBatchAccumulator.sizeOf(plain) + 15);
+    }
+
+    @Test
+    public void groupIsFlushedWhenLingerExpires() throws Exception {
+
+        accumulator = accumulator(128, 1024 * 1024, 10);
+
+        CompletableFuture<SendResult> future = accumulator.append(message("a", 16));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (requests.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+
+        assertThat(requests).hasSize(1);
+
+        callbacks.get(0).onSuccess(new SendResult());
+
+        assertThat(future.get(5, TimeUnit.SECONDS).getMessageId()).isEqualTo("id-a");
+    }
+
+    @Test
+    public void batchResultCompletesEveryFutureWithItsMessage() throws Exception {
+
+        accumulator = accumulator(2, 1024 * 1024, 60000);
+
+        CompletableFuture<SendResult> a = accumulator.append(message("a", 16));
+        CompletableFuture<SendResult> b = accumulator.append(message("b", 16));
+
+        SendResult batchResult = new SendResult();
+        batchResult.setTopic("topic");
+        callbacks.get(0).onSuccess(batchResult);
+
+        assertThat(a.get().getMessageId()).isEqualTo("id-a");
+        assertThat(b.get().getMessageId()).isEqualTo("id-b");
+        assertThat(b.get().getTopic()).isEqualTo("topic");
+    }
+
+    @Test
+    public void batchFailureFailsEveryFuture() {
+
+        accumulator = accumulator(2, 1024 * 1024, 60000);
+
+        CompletableFuture<SendResult> a = accumulator.append(message("a", 16));
+        CompletableFuture<SendResult> b = accumulator.append(message("b", 16));
+
+        OnExceptionContext context = new OnExceptionContext();
+        context.setException(new ONSClientException("broker busy"));
+        callbacks.get(0).onException(context);
+
+        for (CompletableFuture<SendResult> future : new CompletableFuture[]{a, b}) {
+            assertThatThrownBy(future::get).isInstanceOf(ExecutionException.class).hasMessageContaining("broker busy");
+        }
+    }
+
+    @Test
+    public void senderThrowingFailsEveryFuture() {
+
+        accumulator = new ProducerBatchAccumulator((messages, sendCallback) -> {
+            throw new ONSClientException("not started");
+        }, properties(2, 1024 * 1024, 60000));
+
+        CompletableFuture<SendResult> a = accumulator.append(message("a", 16));
+        CompletableFuture<SendResult> b = accumulator.append(message("b", 16));
+
+        assertThat(a).isCompletedExceptionally();
+        assertThat(b).isCompletedExceptionally();
+    }
+
+    @Test
+    public void closeFlushesAndRejectsLaterMessages() {
+
+        accumulator = accumulator(128, 1024 * 1024, 60000);
+
+        accumulator.append(message("a", 16));
+        accumulator.close();
+
+        assertThat(requests).hasSize(1);
+        assertThat(accumulator.append(message("b", 16))).isCompletedExceptionally();
+    }
+
+    private ProducerBatchAccumulator accumulator(int maxMessages, long maxBytes, long lingerMillis) {
+
+        return new ProducerBatchAccumulator((messages, sendCallback) -> {
+
+            // broker assigns ids on send
+            for (Message message : messages) {
+                message.setMsgID("id-" + message.getKey());
+            }
+
+            requests.add(new ArrayList<>(messages));
+            callbacks.add(sendCallback);
+
+        }, properties(maxMessages, maxBytes, lingerMillis));
+    }
+
+    private static ProducerProperties.Batch properties(int maxMessages, long maxBytes, long lingerMillis) {
+
+        ProducerProperties.Batch batch = new ProducerProperties.Batch();
+        batch.setEnabled(true);
+        batch.setMaxMessages(maxMessages);
+        batch.setMaxBytes(maxBytes);
+        batch.setLingerMillis(lingerMillis);
+
+        return batch;
+    }
+
+    private static Message message(String key, int bodySize) {
+        return new Message("topic", "tag", key, new byte[bodySize]);
+    }
+
+    private static List<String> keysOf(List<Message> messages) {
+
+        List<String> keys = new ArrayList<>();
+        for (Message message : messages) {
+            keys.add(message.getKey());
+        }
+
+        return keys;
+    }
+}
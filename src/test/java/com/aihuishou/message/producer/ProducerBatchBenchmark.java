@@ -0,0 +1,196 @@
+package com.aihuishou.message.producer;
+
+import com.aihuishou.message.properties.ProducerProperties;
+import com.aliyun.openservices.ons.api.Message;
+import com.aliyun.openservices.ons.api.Producer;
+import com.aliyun.openservices.ons.api.SendCallback;
+import com.aliyun.openservices.ons.api.SendResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * throughput of MqTemplate#sendAsync against MqTemplate#batchSend, score is per message
+ * <note>
+ * broker is simulated by one channel thread that spends a fixed cost per request and a small cost per message, so
+ * the score shows how many round trips batching saves, not real network latency.
+ * run: mvn test-compile, then main of this class with test classpath
+ * </note>
+ *
+ * @author js.xie
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProducerBatchBenchmark {
+
+    private static final int MESSAGES = 1024;
+
+    /**
+     * cpu spent by the channel on one request
+     */
+    private static final long REQUEST_TOKENS = 20000;
+
+    /**
+     * cpu spent by the channel on one message of a request
+     */
+    private static final long MESSAGE_TOKENS = 200;
+
+    private ExecutorService channel;
+
+    private MqTemplate unbatched;
+
+    private MqTemplate batched;
+
+    private Message[] messages;
+
+    @Setup
+    public void setup() {
+
+        channel = Executors.newSingleThreadExecutor();
+
+        unbatched = new MqTemplate();
+        unbatched.setProducer(new ChannelProducer());
+
+        ProducerProperties.Batch batch = new ProducerProperties.Batch();
+        batch.setEnabled(true);
+        batch.setMaxMessages(128);
+        batch.setLingerMillis(1);
+
+        batched = new MqTemplate();
+        batched.setProducer(new ChannelProducer());
+        batched.buildBatchAccumulator(this::sendBatch, batch);
+
+        messages = new Message[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            messages[i] = new Message("benchmark", "tag", ("payload-" + i).getBytes());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        unbatched.destroy();
+        batched.destroy();
+        channel.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void sendAsync(Blackhole blackhole) {
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            futures[i] = unbatched.doSendAsync(messages[i]);
+        }
+
+        blackhole.consume(CompletableFuture.allOf(futures).join());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void batchSend(Blackhole blackhole) {
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            futures[i] = batched.doBatchSend(messages[i]);
+        }
+
+        blackhole.consume(CompletableFuture.allOf(futures).join());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ProducerBatchBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private void sendBatch(List<Message> batch, SendCallback sendCallback) {
+
+        channel.execute(() -> {
+
+            Blackhole.consumeCPU(REQUEST_TOKENS + MESSAGE_TOKENS * batch.size());
+
+            sendCallback.onSuccess(result(batch.get(0)));
+        });
+    }
+
+    private static SendResult result(Message message) {
+
+        SendResult sendResult = new SendResult();
+        sendResult.setTopic(message.getTopic());
+        sendResult.setMessageId(message.getMsgID());
+
+        return sendResult;
+    }
+
+    private final class ChannelProducer implements Producer {
+
+        @Override
+        public void sendAsync(Message message, SendCallback sendCallback) {
+
+            channel.execute(() -> {
+
+                Blackhole.consumeCPU(REQUEST_TOKENS + MESSAGE_TOKENS);
+
+                sendCallback.onSuccess(result(message));
+            });
+        }
+
+        @Override
+        public SendResult send(Message message) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void sendOneway(Message message) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setCallbackExecutor(ExecutorService callbackExecutor) {
+        }
+
+        @Override
+        public boolean isStarted() {
+            return true;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void updateCredential(Properties credentialProperties) {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}